@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.benchmark;
+
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionDAO;
+import fr.paris.lutece.plugins.subscribe.service.SubscribePlugin;
+import fr.paris.lutece.portal.service.database.AppConnectionService;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Embedded H2 database used by the benchmarks. The connection pool of the core is initialized on this database, so that the DAOs run unchanged.<br />
+ * Synthetic subscriptions are spread over {@value #NB_PROVIDERS} providers and {@value #NB_KEYS} keys, each user has
+ * {@value #SUBSCRIPTIONS_PER_USER} subscriptions and each resource {@value #SUBSCRIPTIONS_PER_RESOURCE} subscribers, except the resource
+ * {@value #HOT_RESOURCE} that gathers one subscription out of ten. The subscriptions of a user have distinct providers and keys, so that the unique
+ * index of the table is never violated.
+ */
+public final class BenchmarkDatabase
+{
+    public static final String PROVIDER_PREFIX = "provider";
+    public static final String KEY_PREFIX = "key";
+    public static final String USER_PREFIX = "user";
+    public static final String RESOURCE_PREFIX = "resource";
+    public static final String HOT_RESOURCE = "hot";
+    public static final int NB_PROVIDERS = 3;
+    public static final int NB_KEYS = 5;
+    public static final int SUBSCRIPTIONS_PER_USER = NB_PROVIDERS * NB_KEYS;
+    public static final int SUBSCRIPTIONS_PER_RESOURCE = 100;
+
+    private static final String POOL_NAME = "portal";
+    private static final String DB_PROPERTIES = "db.properties";
+    private static final String PROPERTY_SQL_DIRECTORY = "subscribe.benchmark.sqlDirectory";
+    private static final String DEFAULT_SQL_DIRECTORY = "src/sql/plugins/subscribe/plugin";
+    private static final String CREATE_SCRIPT = "create_db_subscribe.sql";
+    private static final String INIT_SCRIPT = "init_db_subscribe.sql";
+    private static final String CREATE = "CREATE ";
+    private static final String INDEX = " INDEX ";
+    private static final String SQL_INSERT = "INSERT INTO subscribe_subscription ( id_user, subscription_provider, subscription_key, id_subscribed_resource, subscription_hash ) VALUES ( ?, ?, ?, ?, ? )";
+    private static final String SQL_RESET_BLOCK = "UPDATE subscribe_id_block SET next_id = ( SELECT COALESCE( MAX( id_subscription ), 0 ) + 1 FROM subscribe_subscription )";
+    private static final int BATCH_SIZE = 10000;
+
+    private static Plugin _plugin;
+
+    /**
+     * Private constructor
+     */
+    private BenchmarkDatabase( )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Initialize the connection pool on the embedded database
+     * 
+     * @return The subscribe plugin, bound to the embedded database
+     * @throws IOException
+     *             If the pool configuration can not be written
+     */
+    public static synchronized Plugin getPlugin( ) throws IOException
+    {
+        if ( _plugin == null )
+        {
+            Properties properties = new Properties( );
+            properties.setProperty( POOL_NAME + ".poolservice", "fr.paris.lutece.util.pool.service.LuteceConnectionService" );
+            properties.setProperty( POOL_NAME + ".driver", "org.h2.Driver" );
+            properties.setProperty( POOL_NAME + ".url", "jdbc:h2:mem:subscribe;MODE=MySQL;DB_CLOSE_DELAY=-1" );
+            properties.setProperty( POOL_NAME + ".user", "sa" );
+            properties.setProperty( POOL_NAME + ".password", "" );
+            properties.setProperty( POOL_NAME + ".initconns", "2" );
+            properties.setProperty( POOL_NAME + ".maxconns", "64" );
+            properties.setProperty( POOL_NAME + ".logintimeout", "2" );
+            properties.setProperty( POOL_NAME + ".checkvalidconnectionsql", "SELECT 1" );
+
+            Path pathConfig = Files.createTempDirectory( "subscribe-benchmark" );
+            try ( OutputStream out = Files.newOutputStream( pathConfig.resolve( DB_PROPERTIES ) ) )
+            {
+                properties.store( out, "Subscribe benchmark pool" );
+            }
+
+            AppConnectionService.init( pathConfig.toString( ) + File.separator, DB_PROPERTIES, POOL_NAME );
+
+            Plugin plugin = new SubscribePlugin( );
+            plugin.initConnectionService( POOL_NAME );
+            _plugin = plugin;
+        }
+
+        return _plugin;
+    }
+
+    /**
+     * Create the tables of the plugin, and fill them with synthetic subscriptions
+     * 
+     * @param nbSubscriptions
+     *            The number of subscriptions to create
+     * @param bIndexes
+     *            True to create the indexes of the create script, false to skip them
+     * @throws IOException
+     *             If the SQL scripts can not be read
+     * @throws SQLException
+     *             If the database can not be filled
+     */
+    public static void create( int nbSubscriptions, boolean bIndexes ) throws IOException, SQLException
+    {
+        getPlugin( );
+
+        Path pathSql = Paths.get( System.getProperty( PROPERTY_SQL_DIRECTORY, DEFAULT_SQL_DIRECTORY ) );
+        Connection connection = AppConnectionService.getConnection( );
+
+        try
+        {
+            executeScript( connection, pathSql.resolve( CREATE_SCRIPT ), bIndexes );
+            executeScript( connection, pathSql.resolve( INIT_SCRIPT ), bIndexes );
+            insertSubscriptions( connection, nbSubscriptions );
+
+            try ( Statement statement = connection.createStatement( ) )
+            {
+                statement.executeUpdate( SQL_RESET_BLOCK );
+            }
+        }
+        finally
+        {
+            AppConnectionService.freeConnection( connection );
+        }
+    }
+
+    /**
+     * Get the provider of the nth synthetic subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription
+     * @return The provider
+     */
+    public static String getProvider( int nIndex )
+    {
+        return PROVIDER_PREFIX + ( nIndex % NB_PROVIDERS );
+    }
+
+    /**
+     * Get the key of the nth synthetic subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription
+     * @return The key
+     */
+    public static String getKey( int nIndex )
+    {
+        return KEY_PREFIX + ( nIndex % NB_KEYS );
+    }
+
+    /**
+     * Get the user of the nth synthetic subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription
+     * @return The user
+     */
+    public static String getUser( int nIndex )
+    {
+        return USER_PREFIX + ( nIndex / SUBSCRIPTIONS_PER_USER );
+    }
+
+    /**
+     * Get the resource of the nth synthetic subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription
+     * @return The resource
+     */
+    public static String getResource( int nIndex )
+    {
+        return ( nIndex % 10 == 0 ) ? HOT_RESOURCE : RESOURCE_PREFIX + ( nIndex / SUBSCRIPTIONS_PER_RESOURCE );
+    }
+
+    /**
+     * Execute the statements of a SQL script
+     * 
+     * @param connection
+     *            The connection
+     * @param pathScript
+     *            The script
+     * @param bIndexes
+     *            True to execute CREATE INDEX and CREATE UNIQUE INDEX statements, false to skip them
+     * @throws IOException
+     *             If the script can not be read
+     * @throws SQLException
+     *             If a statement fails
+     */
+    private static void executeScript( Connection connection, Path pathScript, boolean bIndexes ) throws IOException, SQLException
+    {
+        StringBuilder sbScript = new StringBuilder( );
+        for ( String strLine : Files.readAllLines( pathScript, StandardCharsets.UTF_8 ) )
+        {
+            if ( !strLine.trim( ).startsWith( "--" ) )
+            {
+                sbScript.append( strLine ).append( '\n' );
+            }
+        }
+
+        try ( Statement statement = connection.createStatement( ) )
+        {
+            for ( String strSql : sbScript.toString( ).split( ";" ) )
+            {
+                String strStatement = strSql.trim( );
+                if ( !strStatement.isEmpty( ) && ( bIndexes || !isCreateIndex( strStatement ) ) )
+                {
+                    statement.execute( strStatement );
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a statement creates an index, unique or not
+     * 
+     * @param strStatement
+     *            The statement
+     * @return True if the statement creates an index, false otherwise
+     */
+    private static boolean isCreateIndex( String strStatement )
+    {
+        String strUpperCase = strStatement.toUpperCase( Locale.ROOT );
+
+        return strUpperCase.startsWith( CREATE ) && strUpperCase.contains( INDEX );
+    }
+
+    /**
+     * Insert synthetic subscriptions
+     * 
+     * @param connection
+     *            The connection
+     * @param nbSubscriptions
+     *            The number of subscriptions to insert
+     * @throws SQLException
+     *             If a subscription can not be inserted
+     */
+    private static void insertSubscriptions( Connection connection, int nbSubscriptions ) throws SQLException
+    {
+        try ( PreparedStatement statement = connection.prepareStatement( SQL_INSERT ) )
+        {
+            for ( int i = 0; i < nbSubscriptions; i++ )
+            {
+                statement.setString( 1, getUser( i ) );
+                statement.setString( 2, getProvider( i ) );
+                statement.setString( 3, getKey( i ) );
+                statement.setString( 4, getResource( i ) );
+                statement.setString( 5, SubscriptionDAO.getSubscriptionHash( getUser( i ), getProvider( i ), getKey( i ), getResource( i ) ) );
+                statement.addBatch( );
+
+                if ( ( i + 1 ) % BATCH_SIZE == 0 )
+                {
+                    statement.executeBatch( );
+                }
+            }
+            statement.executeBatch( );
+        }
+    }
+}
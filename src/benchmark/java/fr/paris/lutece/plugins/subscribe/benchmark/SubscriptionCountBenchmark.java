@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.benchmark;
+
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionDAO;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of counts and existence checks, compared with the size of the list returned by findByFilter. One synthetic subscription out of 30 is a
+ * subscription to the hot resource, so 3 000 000 subscriptions give a resource with 100 000 subscribers.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 10 )
+@Fork( 1 )
+public class SubscriptionCountBenchmark
+{
+    @Param( {
+            "3000000"
+    } )
+    private int nbSubscriptions;
+
+    private Plugin _plugin;
+    private SubscriptionDAO _dao;
+    private SubscriptionFilter _filterHotResource;
+    private SubscriptionFilter _filterHotSubscriber;
+
+    /**
+     * Create and fill the database
+     * 
+     * @throws IOException
+     *             If the database can not be created
+     * @throws SQLException
+     *             If the database can not be created
+     */
+    @Setup( Level.Trial )
+    public void setUp( ) throws IOException, SQLException
+    {
+        _plugin = BenchmarkDatabase.getPlugin( );
+        BenchmarkDatabase.create( nbSubscriptions, true );
+        _dao = new SubscriptionDAO( );
+        _filterHotResource = new SubscriptionFilter( null, BenchmarkDatabase.getProvider( 0 ), BenchmarkDatabase.getKey( 0 ), BenchmarkDatabase.HOT_RESOURCE );
+        _filterHotSubscriber = new SubscriptionFilter( BenchmarkDatabase.getUser( 0 ), BenchmarkDatabase.getProvider( 0 ), BenchmarkDatabase.getKey( 0 ),
+                BenchmarkDatabase.HOT_RESOURCE );
+    }
+
+    /**
+     * Number of subscribers of the hot resource, as the size of the list of its subscriptions
+     * 
+     * @return The number of subscribers
+     */
+    @Benchmark
+    public int countWithFindByFilter( )
+    {
+        return _dao.findByFilter( _filterHotResource, _plugin ).size( );
+    }
+
+    /**
+     * Number of subscribers of the hot resource, with a COUNT query
+     * 
+     * @return The number of subscribers
+     */
+    @Benchmark
+    public int countByFilter( )
+    {
+        return _dao.countByFilter( _filterHotResource, _plugin );
+    }
+
+    /**
+     * Existence of subscribers of the hot resource, as the emptiness of the list of its subscriptions
+     * 
+     * @return True if the resource has subscribers
+     */
+    @Benchmark
+    public boolean existsWithFindByFilter( )
+    {
+        return !_dao.findByFilter( _filterHotResource, _plugin ).isEmpty( );
+    }
+
+    /**
+     * Existence of subscribers of the hot resource, with a query that stops at the first row
+     * 
+     * @return True if the resource has subscribers
+     */
+    @Benchmark
+    public boolean existsByFilter( )
+    {
+        return _dao.existsByFilter( _filterHotResource, _plugin );
+    }
+
+    /**
+     * Subscription of a user to the hot resource, with a query that stops at the first row
+     * 
+     * @return True if the user is subscribed
+     */
+    @Benchmark
+    public boolean isSubscribedByFilter( )
+    {
+        return _dao.existsByFilter( _filterHotSubscriber, _plugin );
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.benchmark;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionDAO;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the read paths of the subscription DAO. Sample time mode reports the latency percentiles.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 10 )
+@Fork( 1 )
+public class SubscriptionDAOBenchmark
+{
+    private static final int FETCH_SIZE = 500;
+
+    @Param( {
+            "10000", "1000000"
+    } )
+    private int nbSubscriptions;
+
+    @Param( {
+            "true", "false"
+    } )
+    private boolean indexes;
+
+    private Plugin _plugin;
+    private SubscriptionDAO _dao;
+
+    /**
+     * Create and fill the database
+     * 
+     * @throws IOException
+     *             If the database can not be created
+     * @throws SQLException
+     *             If the database can not be created
+     */
+    @Setup( Level.Trial )
+    public void setUp( ) throws IOException, SQLException
+    {
+        _plugin = BenchmarkDatabase.getPlugin( );
+        BenchmarkDatabase.create( nbSubscriptions, indexes );
+        _dao = new SubscriptionDAO( );
+    }
+
+    /**
+     * Subscriptions of a random user, as displayed by the subscription list XPage
+     * 
+     * @return The subscriptions
+     */
+    @Benchmark
+    public List<Subscription> findByUser( )
+    {
+        int nIndex = ThreadLocalRandom.current( ).nextInt( nbSubscriptions );
+        SubscriptionFilter filter = new SubscriptionFilter( );
+        filter.setIdSubscriber( BenchmarkDatabase.getUser( nIndex ) );
+
+        return _dao.findByFilter( filter, _plugin );
+    }
+
+    /**
+     * Subscribers of a random resource, as loaded by getSubscriberList
+     * 
+     * @return The subscriptions
+     */
+    @Benchmark
+    public List<Subscription> findByResource( )
+    {
+        int nIndex = ThreadLocalRandom.current( ).nextInt( nbSubscriptions );
+        SubscriptionFilter filter = new SubscriptionFilter( null, BenchmarkDatabase.getProvider( nIndex ), BenchmarkDatabase.getKey( nIndex ),
+                BenchmarkDatabase.getResource( nIndex ) );
+
+        return _dao.findByFilter( filter, _plugin );
+    }
+
+    /**
+     * Subscribers of the resource that gathers the most subscriptions, loaded as a list
+     * 
+     * @return The subscriptions
+     */
+    @Benchmark
+    public List<Subscription> findHotResource( )
+    {
+        return _dao.findByFilter( getHotResourceFilter( ), _plugin );
+    }
+
+    /**
+     * Subscribers of the resource that gathers the most subscriptions, visited one by one
+     * 
+     * @param blackhole
+     *            The blackhole
+     */
+    @Benchmark
+    public void visitHotResource( Blackhole blackhole )
+    {
+        _dao.visitByFilter( getHotResourceFilter( ), FETCH_SIZE, blackhole::consume, _plugin );
+    }
+
+    /**
+     * One page of the subscriptions of a random user
+     * 
+     * @return The subscriptions
+     */
+    @Benchmark
+    public List<Subscription> findPageByUser( )
+    {
+        int nIndex = ThreadLocalRandom.current( ).nextInt( nbSubscriptions );
+        SubscriptionFilter filter = new SubscriptionFilter( );
+        filter.setIdSubscriber( BenchmarkDatabase.getUser( nIndex ) );
+        filter.setLimit( 10 );
+
+        return _dao.findByFilter( filter, _plugin );
+    }
+
+    /**
+     * Get the filter on the resource that gathers the most subscriptions
+     * 
+     * @return The filter
+     */
+    private static SubscriptionFilter getHotResourceFilter( )
+    {
+        return new SubscriptionFilter( null, BenchmarkDatabase.getProvider( 0 ), BenchmarkDatabase.getKey( 0 ), BenchmarkDatabase.HOT_RESOURCE );
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.benchmark;
+
+import fr.paris.lutece.plugins.subscribe.business.BlockSubscriptionIdAllocator;
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionDAO;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the insertion of subscriptions by concurrent threads, with ids generated by the database or reserved by blocks
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( {
+        Mode.Throughput, Mode.SampleTime
+} )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 10 )
+@Threads( 8 )
+@Fork( 1 )
+public class SubscriptionInsertBenchmark
+{
+    private static final String ALLOCATOR_BLOCK = "block";
+    private static final String INSERTED_RESOURCE_PREFIX = "inserted";
+
+    @Param( {
+            "10000"
+    } )
+    private int nbSubscriptions;
+
+    @Param( {
+            "database", ALLOCATOR_BLOCK
+    } )
+    private String allocator;
+
+    private Plugin _plugin;
+    private SubscriptionDAO _dao;
+    private final AtomicLong _lNextResource = new AtomicLong( );
+
+    /**
+     * Create and fill the database
+     * 
+     * @throws IOException
+     *             If the database can not be created
+     * @throws SQLException
+     *             If the database can not be created
+     */
+    @Setup( Level.Trial )
+    public void setUp( ) throws IOException, SQLException
+    {
+        _plugin = BenchmarkDatabase.getPlugin( );
+        BenchmarkDatabase.create( nbSubscriptions, true );
+        _dao = new SubscriptionDAO( );
+
+        if ( ALLOCATOR_BLOCK.equals( allocator ) )
+        {
+            _dao.setIdAllocator( new BlockSubscriptionIdAllocator( ) );
+        }
+    }
+
+    /**
+     * Insert a subscription
+     * 
+     * @return The inserted subscription
+     */
+    @Benchmark
+    public Subscription insert( )
+    {
+        int nIndex = ThreadLocalRandom.current( ).nextInt( nbSubscriptions );
+        Subscription subscription = new Subscription( );
+        subscription.setUserId( BenchmarkDatabase.getUser( nIndex ) );
+        subscription.setSubscriptionProvider( BenchmarkDatabase.getProvider( nIndex ) );
+        subscription.setSubscriptionKey( BenchmarkDatabase.getKey( nIndex ) );
+        // Every inserted subscription has its own resource, so that the unique index is never violated
+        subscription.setIdSubscribedResource( INSERTED_RESOURCE_PREFIX + _lNextResource.incrementAndGet( ) );
+        _dao.insert( subscription, _plugin );
+
+        return subscription;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subscription id allocator that reserves ranges of ids in the table subscribe_id_block.<br />
+ * Each node reserves a block of ids with a compare and set update, then hands the ids of this block out from memory. The database is only accessed once per
+ * block, and blocks reserved by different nodes never overlap.<br />
+ * A block never starts below the greatest existing subscription id, so that the allocator can be enabled on an existing installation whose ids were
+ * generated by the database.
+ */
+public class BlockSubscriptionIdAllocator implements ISubscriptionIdAllocator
+{
+    private static final String DEFAULT_BLOCK_NAME = "subscribe_subscription";
+    private static final int DEFAULT_BLOCK_SIZE = 50;
+    private static final int MAX_RESERVATION_ATTEMPTS = 100;
+
+    private static final String SQL_QUERY_SELECT_NEXT_ID = "SELECT next_id FROM subscribe_id_block WHERE block_name = ? ";
+    private static final String SQL_QUERY_SELECT_MAX_ID = "SELECT MAX( id_subscription ) FROM subscribe_subscription ";
+    private static final String SQL_QUERY_RESERVE_BLOCK = "UPDATE subscribe_id_block SET next_id = ? WHERE block_name = ? AND next_id = ? ";
+
+    private String _strBlockName = DEFAULT_BLOCK_NAME;
+    private int _nBlockSize = DEFAULT_BLOCK_SIZE;
+    private volatile IdBlock _block = new IdBlock( 0, 0 );
+
+    /**
+     * Set the name of the row of the table subscribe_id_block used by this allocator
+     * 
+     * @param strBlockName
+     *            The name of the block
+     */
+    public void setBlockName( String strBlockName )
+    {
+        _strBlockName = strBlockName;
+    }
+
+    /**
+     * Set the number of ids reserved at once
+     * 
+     * @param nBlockSize
+     *            The number of ids reserved at once
+     */
+    public void setBlockSize( int nBlockSize )
+    {
+        _nBlockSize = nBlockSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int allocateId( Plugin plugin )
+    {
+        while ( true )
+        {
+            IdBlock block = _block;
+            int nId = block.nextId( );
+
+            if ( nId > 0 )
+            {
+                return nId;
+            }
+
+            // Only threads that exhausted the current block wait here
+            synchronized( this )
+            {
+                if ( _block == block )
+                {
+                    _block = reserveBlock( plugin );
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserve a new block of ids in the database
+     * 
+     * @param plugin
+     *            The plugin
+     * @return The reserved block
+     */
+    private IdBlock reserveBlock( Plugin plugin )
+    {
+        for ( int nAttempt = 0; nAttempt < MAX_RESERVATION_ATTEMPTS; nAttempt++ )
+        {
+            int nNextId = selectNextId( plugin );
+
+            // Skip the ids generated by the database before the allocator was enabled
+            int nFirstId = Math.max( nNextId, selectMaxId( plugin ) + 1 );
+            int nLastId = nFirstId + _nBlockSize;
+
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RESERVE_BLOCK, plugin ) )
+            {
+                daoUtil.setInt( 1, nLastId );
+                daoUtil.setString( 2, _strBlockName );
+                daoUtil.setInt( 3, nNextId );
+
+                // Another node reserved this block first if no row was updated
+                boolean bReserved = daoUtil.executeUpdate( ) == 1;
+
+                daoUtil.free( );
+
+                if ( bReserved )
+                {
+                    return new IdBlock( nFirstId, nLastId );
+                }
+            }
+        }
+
+        throw new AppException( "Unable to reserve a block of subscription ids for " + _strBlockName );
+    }
+
+    /**
+     * Get the first id of the next available block
+     * 
+     * @param plugin
+     *            The plugin
+     * @return The first id of the next available block
+     */
+    private int selectNextId( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_NEXT_ID, plugin ) )
+        {
+            daoUtil.setString( 1, _strBlockName );
+            daoUtil.executeQuery( );
+
+            if ( !daoUtil.next( ) )
+            {
+                daoUtil.free( );
+                throw new AppException( "No row named " + _strBlockName + " in table subscribe_id_block" );
+            }
+
+            int nNextId = daoUtil.getInt( 1 );
+
+            daoUtil.free( );
+            return nNextId;
+        }
+    }
+
+    /**
+     * Get the greatest existing subscription id
+     * 
+     * @param plugin
+     *            The plugin
+     * @return The greatest subscription id, or 0 if there is no subscription
+     */
+    private static int selectMaxId( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_MAX_ID, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            int nMaxId = daoUtil.next( ) ? daoUtil.getInt( 1 ) : 0;
+
+            daoUtil.free( );
+            return nMaxId;
+        }
+    }
+
+    /**
+     * Range of reserved ids. The ids are handed out without any lock.
+     */
+    private static final class IdBlock
+    {
+        private final AtomicInteger _nNextId;
+        private final int _nEndId;
+
+        /**
+         * Constructor
+         * 
+         * @param nFirstId
+         *            The first id of the block
+         * @param nEndId
+         *            The first id after the block
+         */
+        IdBlock( int nFirstId, int nEndId )
+        {
+            _nNextId = new AtomicInteger( nFirstId );
+            _nEndId = nEndId;
+        }
+
+        /**
+         * Get the next id of the block
+         * 
+         * @return The next id, or 0 if the block is exhausted
+         */
+        int nextId( )
+        {
+            int nId = _nNextId.getAndIncrement( );
+            return ( nId < _nEndId ) ? nId : 0;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact read model of a large list of subscriptions. Subscriptions are stored by columns : ids in an int array, providers and subscription keys as codes
+ * of a shared {@link SubscriptionDictionary}, and user and resource ids as strings that are shared by every subscription with the same value.<br />
+ * Subscriptions can be converted back to {@link Subscription} beans one by one.
+ */
+public final class CompactSubscriptionList
+{
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final SubscriptionDictionary DICTIONARY = new SubscriptionDictionary( );
+
+    private final Map<String, String> _mapCanonicalStrings = new HashMap<>( );
+    private int _nSize;
+    private int [ ] _ids = new int [ DEFAULT_CAPACITY];
+    private int [ ] _providerCodes = new int [ DEFAULT_CAPACITY];
+    private int [ ] _keyCodes = new int [ DEFAULT_CAPACITY];
+    private String [ ] _userIds = new String [ DEFAULT_CAPACITY];
+    private String [ ] _resourceIds = new String [ DEFAULT_CAPACITY];
+
+    /**
+     * Add a subscription at the end of the list
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @param strUserId
+     *            The id of the subscriber
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     */
+    public void add( int nIdSubscription, String strUserId, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        if ( _nSize == _ids.length )
+        {
+            resize( Math.max( DEFAULT_CAPACITY, _nSize * 2 ) );
+        }
+
+        _ids [_nSize] = nIdSubscription;
+        _userIds [_nSize] = canonicalize( strUserId );
+        _providerCodes [_nSize] = DICTIONARY.getCode( strSubscriptionProvider );
+        _keyCodes [_nSize] = DICTIONARY.getCode( strSubscriptionKey );
+        _resourceIds [_nSize] = canonicalize( strIdSubscribedResource );
+        _nSize++;
+    }
+
+    /**
+     * Release the memory reserved for subscriptions that will not be added. Must be called once the list is filled.
+     */
+    public void trimToSize( )
+    {
+        resize( _nSize );
+        _mapCanonicalStrings.clear( );
+    }
+
+    /**
+     * Get the number of subscriptions
+     * 
+     * @return The number of subscriptions
+     */
+    public int size( )
+    {
+        return _nSize;
+    }
+
+    /**
+     * Get the id of a subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription in the list
+     * @return The id of the subscription
+     */
+    public int getIdSubscription( int nIndex )
+    {
+        return _ids [nIndex];
+    }
+
+    /**
+     * Get the id of the subscriber of a subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription in the list
+     * @return The id of the subscriber
+     */
+    public String getUserId( int nIndex )
+    {
+        return _userIds [nIndex];
+    }
+
+    /**
+     * Get the provider of a subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription in the list
+     * @return The provider of the subscription
+     */
+    public String getSubscriptionProvider( int nIndex )
+    {
+        return DICTIONARY.getValue( _providerCodes [nIndex] );
+    }
+
+    /**
+     * Get the subscription key of a subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription in the list
+     * @return The subscription key
+     */
+    public String getSubscriptionKey( int nIndex )
+    {
+        return DICTIONARY.getValue( _keyCodes [nIndex] );
+    }
+
+    /**
+     * Get the id of the resource of a subscription
+     * 
+     * @param nIndex
+     *            The index of the subscription in the list
+     * @return The id of the subscribed resource
+     */
+    public String getIdSubscribedResource( int nIndex )
+    {
+        return _resourceIds [nIndex];
+    }
+
+    /**
+     * Convert a subscription of the list to a bean
+     * 
+     * @param nIndex
+     *            The index of the subscription in the list
+     * @return The subscription
+     */
+    public Subscription toSubscription( int nIndex )
+    {
+        Subscription subscription = new Subscription( );
+        subscription.setIdSubscription( getIdSubscription( nIndex ) );
+        subscription.setUserId( getUserId( nIndex ) );
+        subscription.setSubscriptionProvider( getSubscriptionProvider( nIndex ) );
+        subscription.setSubscriptionKey( getSubscriptionKey( nIndex ) );
+        subscription.setIdSubscribedResource( getIdSubscribedResource( nIndex ) );
+
+        return subscription;
+    }
+
+    /**
+     * Convert every subscription of the list to a bean
+     * 
+     * @return The list of subscriptions
+     */
+    public List<Subscription> toSubscriptionList( )
+    {
+        List<Subscription> listSubscriptions = new ArrayList<>( _nSize );
+
+        for ( int i = 0; i < _nSize; i++ )
+        {
+            listSubscriptions.add( toSubscription( i ) );
+        }
+
+        return listSubscriptions;
+    }
+
+    /**
+     * Get the shared instance of a string equal to a given one
+     * 
+     * @param strValue
+     *            The string
+     * @return The shared instance
+     */
+    private String canonicalize( String strValue )
+    {
+        if ( strValue == null )
+        {
+            return null;
+        }
+
+        String strCanonical = _mapCanonicalStrings.putIfAbsent( strValue, strValue );
+
+        return ( strCanonical != null ) ? strCanonical : strValue;
+    }
+
+    /**
+     * Resize the columns
+     * 
+     * @param nCapacity
+     *            The new capacity
+     */
+    private void resize( int nCapacity )
+    {
+        _ids = Arrays.copyOf( _ids, nCapacity );
+        _providerCodes = Arrays.copyOf( _providerCodes, nCapacity );
+        _keyCodes = Arrays.copyOf( _keyCodes, nCapacity );
+        _userIds = Arrays.copyOf( _userIds, nCapacity );
+        _resourceIds = Arrays.copyOf( _resourceIds, nCapacity );
+    }
+}
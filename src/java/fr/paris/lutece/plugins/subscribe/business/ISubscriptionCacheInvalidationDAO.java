@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Interface for the DAO of the log of subscription cache invalidations
+ */
+public interface ISubscriptionCacheInvalidationDAO
+{
+    /**
+     * Insert an invalidation in the log
+     * 
+     * @param invalidation
+     *            the invalidation. Its id is set once inserted
+     * @param plugin
+     *            the Plugin
+     */
+    void insert( SubscriptionCacheInvalidation invalidation, Plugin plugin );
+
+    /**
+     * Get the id of the last invalidation of the log
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return the id of the last invalidation, or 0 if the log is empty
+     */
+    int selectLastId( Plugin plugin );
+
+    /**
+     * Load the invalidations that follow a given one, in the order of their ids
+     * 
+     * @param nIdInvalidation
+     *            the id of the invalidation after which invalidations are loaded
+     * @param nLimit
+     *            the maximum number of invalidations to load
+     * @param plugin
+     *            the Plugin
+     * @return the invalidations
+     */
+    List<SubscriptionCacheInvalidation> selectAfter( int nIdInvalidation, int nLimit, Plugin plugin );
+
+    /**
+     * Delete the invalidations older than a given date
+     * 
+     * @param date
+     *            the date
+     * @param plugin
+     *            the Plugin
+     * @return the number of deleted invalidations
+     */
+    int deleteOlderThan( Timestamp date, Plugin plugin );
+}
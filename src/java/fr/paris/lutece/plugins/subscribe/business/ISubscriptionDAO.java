@@ -37,6 +37,7 @@ import fr.paris.lutece.portal.service.plugin.Plugin;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface for subscriber DAO
@@ -54,6 +55,19 @@ public interface ISubscriptionDAO
      */
     void insert( Subscription subscription, Plugin plugin );
 
+    /**
+     * Insert a new record in the table, unless a record with the same user, provider, subscription key and subscribed resource already exists. The check
+     * relies on the unique index of the table, so it is safe with concurrent inserts from several threads or nodes. If a record already exists, the id of the
+     * subscription is set to the id of this record.
+     * 
+     * @param subscription
+     *            instance of the Subscription object to insert
+     * @param plugin
+     *            the Plugin
+     * @return true if the record was inserted, false if it already existed
+     */
+    boolean insertIfAbsent( Subscription subscription, Plugin plugin );
+
     /**
      * Update the record in the table
      * 
@@ -74,6 +88,37 @@ public interface ISubscriptionDAO
      */
     void delete( int nIdSubscription, Plugin plugin );
 
+    /**
+     * Insert several records in the table with a single batch. The ids of the subscriptions are set once they are inserted.
+     * 
+     * @param collectionSubscriptions
+     *            the subscriptions to insert
+     * @param plugin
+     *            the Plugin
+     */
+    void insertBatch( Collection<Subscription> collectionSubscriptions, Plugin plugin );
+
+    /**
+     * Delete several records from the table with a single batch
+     * 
+     * @param arrayIdSubscriptions
+     *            the identifiers of the subscriptions to delete
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteBatch( int [ ] arrayIdSubscriptions, Plugin plugin );
+
+    /**
+     * Delete every record matching a filter with a single statement. Nothing is deleted if the filter has no criteria. The limit of the filter is ignored.
+     * 
+     * @param filter
+     *            the filter
+     * @param plugin
+     *            the Plugin
+     * @return the number of deleted records
+     */
+    int deleteByFilter( SubscriptionFilter filter, Plugin plugin );
+
     ///////////////////////////////////////////////////////////////////////////
     // Finders
 
@@ -98,12 +143,84 @@ public interface ISubscriptionDAO
     Collection<Subscription> selectSubscriptionsList( Plugin plugin );
 
     /**
-     * Find a list of subscriptions from a filter
+     * Load the data of all the subscription objects and returns them in a compact list, with interned providers and subscription keys
+     * 
+     * @param plugin
+     *            the plugin
+     * @return The compact list which contains the data of all the subscription objects
+     */
+    CompactSubscriptionList selectCompactSubscriptionsList( Plugin plugin );
+
+    /**
+     * Find a list of subscriptions from a filter. If the filter is paginated, subscriptions are returned by ascending id.
+     * 
+     * @param filter
+     *            The filter
+     * @param plugin
+     *            the plugin
+     * @return The list of subscriptions that matches the given filter
+     */
+    List<Subscription> findByFilter( SubscriptionFilter filter, Plugin plugin );
+
+    /**
+     * Find a list of subscriptions from a filter, on the pool of the subscribe plugin. If the filter is paginated, subscriptions are returned by ascending id.
      * 
      * @param filter
      *            The filter
      * @return The list of subscriptions that matches the given filter
+     * @deprecated Use {@link #findByFilter(SubscriptionFilter, Plugin)}
      */
+    @Deprecated
     List<Subscription> findByFilter( SubscriptionFilter filter );
 
+    /**
+     * Count the records matching a filter. The limit of the filter is ignored.
+     * 
+     * @param filter
+     *            The filter
+     * @param plugin
+     *            the plugin
+     * @return the number of records matching the filter
+     */
+    int countByFilter( SubscriptionFilter filter, Plugin plugin );
+
+    /**
+     * Check if at least one record matches a filter. The query stops at the first matching record. The pagination of the filter is ignored.
+     * 
+     * @param filter
+     *            The filter
+     * @param plugin
+     *            the plugin
+     * @return true if at least one record matches the filter, false otherwise
+     */
+    boolean existsByFilter( SubscriptionFilter filter, Plugin plugin );
+
+    /**
+     * Split the records matching a filter into chunks of consecutive ids. The pagination of the filter is ignored.
+     * 
+     * @param filter
+     *            The filter
+     * @param nChunkSize
+     *            The number of records of each chunk. The last chunk may be smaller
+     * @param plugin
+     *            the plugin
+     * @return the greatest id of each chunk, in ascending order. The list is empty if no record matches the filter
+     */
+    List<Integer> selectIdBoundaries( SubscriptionFilter filter, int nChunkSize, Plugin plugin );
+
+    /**
+     * Visit the subscriptions matching a filter one by one. Rows are read by pages of ascending ids, so that subscriptions are never loaded all at once, and
+     * through the connection of the current transaction if there is one. The limit of the filter is ignored.
+     * 
+     * @param filter
+     *            The filter
+     * @param nFetchSize
+     *            The number of subscriptions read per page
+     * @param visitor
+     *            The visitor called for each subscription
+     * @param plugin
+     *            the plugin
+     */
+    void visitByFilter( SubscriptionFilter filter, int nFetchSize, Consumer<Subscription> visitor, Plugin plugin );
+
 }
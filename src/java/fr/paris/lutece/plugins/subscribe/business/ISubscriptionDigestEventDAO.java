@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interface for the DAO of the events waiting in digest windows
+ */
+public interface ISubscriptionDigestEventDAO
+{
+    /**
+     * Insert an event
+     * 
+     * @param event
+     *            the event
+     * @param plugin
+     *            the Plugin
+     */
+    void insert( SubscriptionDigestEvent event, Plugin plugin );
+
+    /**
+     * Load the first event of each updated resource. The first event of a resource is the one that opened its digest window
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return the provider, subscription key, resource and date of the first event of each resource. Ids and payloads are not loaded
+     */
+    List<SubscriptionDigestEvent> selectFirstEventByResource( Plugin plugin );
+
+    /**
+     * Load and lock the events of a resource, oldest first. This method must be called in a transaction : the events stay locked until it ends, so that they
+     * are not sent by two nodes.
+     * 
+     * @param strSubscriptionProvider
+     *            the subscription provider
+     * @param strSubscriptionKey
+     *            the subscription key
+     * @param strIdSubscribedResource
+     *            the id of the subscribed resource
+     * @param plugin
+     *            the Plugin
+     * @return the events
+     */
+    List<SubscriptionDigestEvent> selectEventsForUpdate( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource,
+            Plugin plugin );
+
+    /**
+     * Delete several events with a single batch
+     * 
+     * @param collectionIdEvents
+     *            the ids of the events
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteBatch( Collection<Integer> collectionIdEvents, Plugin plugin );
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interface for the DAO of fan-outs and of their chunks
+ */
+public interface ISubscriptionFanOutDAO
+{
+    /**
+     * Insert a fan-out
+     * 
+     * @param fanOut
+     *            the fan-out. Its id is set once inserted
+     * @param plugin
+     *            the Plugin
+     */
+    void insert( SubscriptionFanOut fanOut, Plugin plugin );
+
+    /**
+     * Insert the chunks of a fan-out with a single batch
+     * 
+     * @param collectionChunks
+     *            the chunks
+     * @param plugin
+     *            the Plugin
+     */
+    void insertChunks( Collection<SubscriptionFanOutChunk> collectionChunks, Plugin plugin );
+
+    /**
+     * Load the chunks that are not being processed at a given date, with their fan-out, oldest first
+     * 
+     * @param date
+     *            the date
+     * @param nLimit
+     *            the maximum number of chunks to load
+     * @param plugin
+     *            the Plugin
+     * @return the chunks
+     */
+    List<SubscriptionFanOutChunk> selectClaimableChunks( Timestamp date, int nLimit, Plugin plugin );
+
+    /**
+     * Claim a chunk before processing it : its number of attempts is incremented and it is leased until the given date, unless another worker claimed it first
+     * 
+     * @param chunk
+     *            the chunk, as it was loaded
+     * @param dateLeaseEnd
+     *            the date from which the chunk can be claimed again if it was neither completed nor checkpointed
+     * @param plugin
+     *            the Plugin
+     * @return true if the chunk was claimed, false if another worker claimed it first
+     */
+    boolean claim( SubscriptionFanOutChunk chunk, Timestamp dateLeaseEnd, Plugin plugin );
+
+    /**
+     * Record the progress of a claimed chunk and extend its lease
+     * 
+     * @param chunk
+     *            the claimed chunk
+     * @param nIdSubscriptionFrom
+     *            the id of the last notified subscription
+     * @param dateLeaseEnd
+     *            the new end of the lease
+     * @param plugin
+     *            the Plugin
+     * @return true if the progress was recorded, false if the chunk was claimed by another worker in the meantime
+     */
+    boolean checkpoint( SubscriptionFanOutChunk chunk, int nIdSubscriptionFrom, Timestamp dateLeaseEnd, Plugin plugin );
+
+    /**
+     * Delete a completed chunk
+     * 
+     * @param nIdChunk
+     *            the id of the chunk
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteChunk( int nIdChunk, Plugin plugin );
+
+    /**
+     * Delete a fan-out if none of its chunks remains
+     * 
+     * @param nIdFanOut
+     *            the id of the fan-out
+     * @param plugin
+     *            the Plugin
+     * @return true if the fan-out was deleted
+     */
+    boolean deleteIfComplete( int nIdFanOut, Plugin plugin );
+}
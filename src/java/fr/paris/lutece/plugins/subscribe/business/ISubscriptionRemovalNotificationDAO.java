@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interface for the DAO of pending subscription removal notifications
+ */
+public interface ISubscriptionRemovalNotificationDAO
+{
+    /**
+     * Insert a notification for each removed subscription
+     * 
+     * @param collectionSubscriptions
+     *            the removed subscriptions
+     * @param dateNextAttempt
+     *            the date from which the providers can be notified
+     * @param plugin
+     *            the Plugin
+     */
+    void insert( Collection<Subscription> collectionSubscriptions, Timestamp dateNextAttempt, Plugin plugin );
+
+    /**
+     * Insert a notification for each subscription that matches a filter. This method must be called in the transaction that removes the subscriptions, before
+     * they are removed.
+     * 
+     * @param filter
+     *            the filter of the removed subscriptions
+     * @param dateNextAttempt
+     *            the date from which the providers can be notified
+     * @param plugin
+     *            the Plugin
+     * @return the number of inserted notifications
+     */
+    int insertByFilter( SubscriptionFilter filter, Timestamp dateNextAttempt, Plugin plugin );
+
+    /**
+     * Load the notifications that can be sent at a given date, oldest first
+     * 
+     * @param date
+     *            the date
+     * @param nLimit
+     *            the maximum number of notifications to load
+     * @param plugin
+     *            the Plugin
+     * @return the notifications
+     */
+    List<SubscriptionRemovalNotification> selectPending( Timestamp date, int nLimit, Plugin plugin );
+
+    /**
+     * Claim a notification before sending it : its number of attempts is incremented and it is postponed to the given date, unless another node claimed it
+     * first
+     * 
+     * @param notification
+     *            the notification, as it was loaded
+     * @param dateLeaseEnd
+     *            the date from which the notification can be claimed again if it was neither sent nor rescheduled
+     * @param plugin
+     *            the Plugin
+     * @return true if the notification was claimed, false if another node claimed it first
+     */
+    boolean claim( SubscriptionRemovalNotification notification, Timestamp dateLeaseEnd, Plugin plugin );
+
+    /**
+     * Postpone a notification that could not be sent
+     * 
+     * @param nIdNotification
+     *            the id of the notification
+     * @param dateNextAttempt
+     *            the date of the next attempt
+     * @param plugin
+     *            the Plugin
+     */
+    void reschedule( int nIdNotification, Timestamp dateNextAttempt, Plugin plugin );
+
+    /**
+     * Delete several notifications with a single batch
+     * 
+     * @param collectionIdNotifications
+     *            the ids of the notifications to delete
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteBatch( Collection<Integer> collectionIdNotifications, Plugin plugin );
+}
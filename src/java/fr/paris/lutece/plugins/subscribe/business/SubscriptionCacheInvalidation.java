@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import java.sql.Timestamp;
+
+/**
+ * Invalidation of cached subscriptions, broadcast by a node to the other nodes of the cluster
+ */
+public class SubscriptionCacheInvalidation
+{
+    private int _nIdInvalidation;
+    private String _strNodeId;
+    private Subscription _subscription;
+    private Timestamp _dateInvalidation;
+
+    /**
+     * Get the id of the invalidation
+     * 
+     * @return The id of the invalidation
+     */
+    public int getIdInvalidation( )
+    {
+        return _nIdInvalidation;
+    }
+
+    /**
+     * Set the id of the invalidation
+     * 
+     * @param nIdInvalidation
+     *            The id of the invalidation
+     */
+    public void setIdInvalidation( int nIdInvalidation )
+    {
+        _nIdInvalidation = nIdInvalidation;
+    }
+
+    /**
+     * Get the id of the node that broadcast the invalidation
+     * 
+     * @return The id of the node
+     */
+    public String getNodeId( )
+    {
+        return _strNodeId;
+    }
+
+    /**
+     * Set the id of the node that broadcast the invalidation
+     * 
+     * @param strNodeId
+     *            The id of the node
+     */
+    public void setNodeId( String strNodeId )
+    {
+        _strNodeId = strNodeId;
+    }
+
+    /**
+     * Get the created, modified or removed subscription whose cache entries must be removed
+     * 
+     * @return The subscription, or null if the whole cache must be reset
+     */
+    public Subscription getSubscription( )
+    {
+        return _subscription;
+    }
+
+    /**
+     * Set the created, modified or removed subscription whose cache entries must be removed
+     * 
+     * @param subscription
+     *            The subscription, or null if the whole cache must be reset
+     */
+    public void setSubscription( Subscription subscription )
+    {
+        _subscription = subscription;
+    }
+
+    /**
+     * Get the date of the invalidation
+     * 
+     * @return The date of the invalidation
+     */
+    public Timestamp getDateInvalidation( )
+    {
+        return _dateInvalidation;
+    }
+
+    /**
+     * Set the date of the invalidation
+     * 
+     * @param dateInvalidation
+     *            The date of the invalidation
+     */
+    public void setDateInvalidation( Timestamp dateInvalidation )
+    {
+        _dateInvalidation = dateInvalidation;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class provides Data Access methods for the log of subscription cache invalidations
+ */
+public final class SubscriptionCacheInvalidationDAO implements ISubscriptionCacheInvalidationDAO
+{
+    // Constants
+    private static final String SQL_QUERY_INSERT = "INSERT INTO subscribe_cache_invalidation ( node_id, id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource, date_invalidation ) VALUES ( ?, ?, ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_SELECT_LAST_ID = "SELECT MAX( id_invalidation ) FROM subscribe_cache_invalidation ";
+    private static final String SQL_QUERY_SELECT_AFTER = "SELECT id_invalidation, node_id, id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource, date_invalidation FROM subscribe_cache_invalidation WHERE id_invalidation > ? ORDER BY id_invalidation ASC LIMIT ? ";
+    private static final String SQL_QUERY_DELETE_OLDER_THAN = "DELETE FROM subscribe_cache_invalidation WHERE date_invalidation < ? ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert( SubscriptionCacheInvalidation invalidation, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            Subscription subscription = invalidation.getSubscription( );
+            daoUtil.setString( 1, invalidation.getNodeId( ) );
+
+            if ( subscription != null )
+            {
+                daoUtil.setInt( 2, subscription.getIdSubscription( ) );
+                daoUtil.setString( 3, subscription.getUserId( ) );
+                daoUtil.setString( 4, subscription.getSubscriptionProvider( ) );
+                daoUtil.setString( 5, subscription.getSubscriptionKey( ) );
+                daoUtil.setString( 6, subscription.getIdSubscribedResource( ) );
+            }
+            else
+            {
+                // A reset of the whole cache
+                daoUtil.setIntNull( 2 );
+                daoUtil.setString( 3, null );
+                daoUtil.setString( 4, null );
+                daoUtil.setString( 5, null );
+                daoUtil.setString( 6, null );
+            }
+            daoUtil.setTimestamp( 7, invalidation.getDateInvalidation( ) );
+            daoUtil.executeUpdate( );
+
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                invalidation.setIdInvalidation( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int selectLastId( Plugin plugin )
+    {
+        int nLastId = 0;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_LAST_ID, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
+            {
+                nLastId = daoUtil.getInt( 1 );
+            }
+
+            daoUtil.free( );
+        }
+
+        return nLastId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SubscriptionCacheInvalidation> selectAfter( int nIdInvalidation, int nLimit, Plugin plugin )
+    {
+        List<SubscriptionCacheInvalidation> listInvalidations = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_AFTER, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdInvalidation );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                SubscriptionCacheInvalidation invalidation = new SubscriptionCacheInvalidation( );
+                invalidation.setIdInvalidation( daoUtil.getInt( 1 ) );
+                invalidation.setNodeId( daoUtil.getString( 2 ) );
+
+                if ( daoUtil.getObject( 3 ) != null )
+                {
+                    Subscription subscription = new Subscription( );
+                    subscription.setIdSubscription( daoUtil.getInt( 3 ) );
+                    subscription.setUserId( daoUtil.getString( 4 ) );
+                    subscription.setSubscriptionProvider( daoUtil.getString( 5 ) );
+                    subscription.setSubscriptionKey( daoUtil.getString( 6 ) );
+                    subscription.setIdSubscribedResource( daoUtil.getString( 7 ) );
+                    invalidation.setSubscription( subscription );
+                }
+
+                invalidation.setDateInvalidation( daoUtil.getTimestamp( 8 ) );
+                listInvalidations.add( invalidation );
+            }
+
+            daoUtil.free( );
+        }
+
+        return listInvalidations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteOlderThan( Timestamp date, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_OLDER_THAN, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, date );
+
+            int nDeleted = daoUtil.executeUpdate( );
+            daoUtil.free( );
+
+            return nDeleted;
+        }
+    }
+}
@@ -34,11 +34,21 @@
 package fr.paris.lutece.plugins.subscribe.business;
 
 import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.util.sql.DAOUtil;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -50,63 +60,265 @@ public final class SubscriptionDAO implements ISubscriptionDAO
 {
 
     // Constants
-    private static final String SQL_QUERY_NEW_PK = "SELECT max( id_subscription ) FROM subscribe_subscription";
     private static final String SQL_QUERY_SELECT = " SELECT id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource FROM subscribe_subscription ";
     private static final String SQL_QUERY_SELECT_FROM_SUBSCRIPTION_ID = SQL_QUERY_SELECT + " WHERE id_subscription = ? ";
-    private static final String SQL_QUERY_INSERT = "INSERT INTO subscribe_subscription ( id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource ) VALUES ( ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_INSERT = "INSERT INTO subscribe_subscription ( id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource, subscription_hash ) VALUES ( ?, ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_INSERT_GENERATED_KEY = "INSERT INTO subscribe_subscription ( id_user, subscription_provider, subscription_key, id_subscribed_resource, subscription_hash ) VALUES ( ?, ?, ?, ?, ? ) ";
     private static final String SQL_QUERY_DELETE = "DELETE FROM subscribe_subscription WHERE id_subscription = ? ";
-    private static final String SQL_QUERY_UPDATE = "UPDATE subscribe_subscription SET id_user = ?, subscription_provider = ?, subscription_key = ?, id_subscribed_resource = ? WHERE id_subscription = ?";
+    private static final String SQL_QUERY_DELETE_ALL = "DELETE FROM subscribe_subscription ";
+    private static final String SQL_QUERY_UPDATE = "UPDATE subscribe_subscription SET id_user = ?, subscription_provider = ?, subscription_key = ?, id_subscribed_resource = ?, subscription_hash = ? WHERE id_subscription = ?";
+    private static final String SQL_QUERY_SELECT_COUNT = "SELECT COUNT(*) FROM subscribe_subscription ";
+    private static final String SQL_QUERY_SELECT_EXISTS = "SELECT id_subscription FROM subscribe_subscription ";
+    private static final String SQL_QUERY_SELECT_IDS = "SELECT id_subscription FROM subscribe_subscription ";
     private static final String SQL_QUERY_SELECTALL = "SELECT id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource FROM subscribe_subscription";
 
     private static final String SQL_FILTER_ID_USER = " id_user = ? ";
     private static final String SQL_FILTER_PROVIDER = " subscription_provider = ? ";
     private static final String SQL_FILTER_SUBSCRIPTION_KEY = " subscription_key = ? ";
     private static final String SQL_FILTER_ID_SUBSCRIBED_RESOURCE = " id_subscribed_resource = ? ";
+    private static final String SQL_FILTER_ID_SUBSCRIPTION_AFTER = " id_subscription > ? ";
+    private static final String SQL_FILTER_ID_SUBSCRIPTION_BEFORE = " id_subscription < ? ";
+    private static final String SQL_ORDER_BY_ID_ASC = " ORDER BY id_subscription ASC ";
+    private static final String SQL_ORDER_BY_ID_DESC = " ORDER BY id_subscription DESC ";
+    private static final String SQL_LIMIT = " LIMIT ? ";
+    private static final String SQL_LIMIT_ONE = " LIMIT 1 ";
+    private static final String SQL_STATE_UNIQUE_VIOLATION = "23505";
+    private static final String SQL_STATE_INTEGRITY_VIOLATION = "23000";
+    private static final int MYSQL_ERROR_DUPLICATE_ENTRY = 1062;
+    private static final int MAX_INSERT_IF_ABSENT_ATTEMPTS = 3;
     private static final String CONSTANT_WHERE = " WHERE ";
     private static final String CONSTANT_AND = " AND ";
+    private static final String PLUGIN_NAME = "subscribe";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final char HASH_LENGTH_SEPARATOR = ':';
+    private static final int HASH_NULL_LENGTH = -1;
+
+    // Filter shapes : each bit tells whether a criteria is used, in the order of the WHERE clause
+    private static final int SHAPE_USER = 1;
+    private static final int SHAPE_PROVIDER = 1 << 1;
+    private static final int SHAPE_SUBSCRIPTION_KEY = 1 << 2;
+    private static final int SHAPE_ID_SUBSCRIBED_RESOURCE = 1 << 3;
+    private static final int SHAPE_ID_SUBSCRIPTION_AFTER = 1 << 4;
+    private static final int SHAPE_ID_SUBSCRIPTION_BEFORE = 1 << 5;
+    private static final int ORDER_NONE = 0;
+    private static final int ORDER_ASC = 1;
+    private static final int ORDER_ASC_LIMIT = 2;
+    private static final int ORDER_DESC_LIMIT = 3;
+
+    // Queries are built once for every filter shape, so that statement caches of drivers and pools are hit
+    private static final String [ ] SQL_FILTER_CLAUSES = buildFilterClauses( );
+    private static final String [ ] [ ] SQL_QUERIES_FIND_BY_FILTER = buildFindByFilterQueries( );
+
+    private ISubscriptionIdAllocator _idAllocator;
 
     /**
-     * Get a new primary key
+     * Set the allocator of subscription ids. If no allocator is set, ids are generated by the database.
      * 
-     * @param plugin
-     *            The plugin
-     * @return The new primary key
+     * @param idAllocator
+     *            The allocator of subscription ids
+     */
+    public void setIdAllocator( ISubscriptionIdAllocator idAllocator )
+    {
+        _idAllocator = idAllocator;
+    }
+
+    /**
+     * {@inheritDoc}
      */
-    private int newPrimaryKey( Plugin plugin )
+    @Override
+    public void insert( Subscription subscription, Plugin plugin )
     {
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_NEW_PK, plugin ) )
+        if ( _idAllocator != null )
         {
-            daoUtil.executeQuery( );
+            insertWithAllocatedId( subscription, plugin );
+        }
+        else
+        {
+            insertWithGeneratedKey( subscription, plugin );
+        }
+    }
 
-            int nKey = 1;
-            if ( daoUtil.next( ) )
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean insertIfAbsent( Subscription subscription, Plugin plugin )
+    {
+        SubscriptionFilter filter = new SubscriptionFilter( subscription.getUserId( ), subscription.getSubscriptionProvider( ),
+                subscription.getSubscriptionKey( ), subscription.getIdSubscribedResource( ) );
+
+        for ( int nAttempt = 0; nAttempt < MAX_INSERT_IF_ABSENT_ATTEMPTS; nAttempt++ )
+        {
+            try
+            {
+                insert( subscription, plugin );
+
+                return true;
+            }
+            catch( AppException e )
             {
-                nKey = daoUtil.getInt( 1 ) + 1;
+                if ( !isDuplicateKey( e ) )
+                {
+                    throw e;
+                }
             }
 
-            daoUtil.free( );
-            return nKey;
+            // The existing record may have been removed since the insert failed, in which case the insert is tried again
+            List<Subscription> listExisting = findByFilter( filter, plugin );
+            if ( !listExisting.isEmpty( ) )
+            {
+                subscription.setIdSubscription( listExisting.get( 0 ).getIdSubscription( ) );
+
+                return false;
+            }
         }
+
+        throw new AppException( "Unable to insert the subscription of " + subscription.getUserId( ) + " to " + subscription.getIdSubscribedResource( ) );
     }
 
     /**
-     * {@inheritDoc}
+     * Get the hash identifying the user, provider, subscription key and subscribed resource of a subscription, stored in the uniquely indexed column
+     * <code>subscription_hash</code>. A unique index on the four columns themselves would exceed the maximum key length of InnoDB.<br />
+     * The hash is the hexadecimal SHA-256 of the UTF-8 encoding of each value in lower case prefixed by its number of characters and a colon, a null value
+     * being hashed as the length -1 followed by a colon. The upgrade script computes the same hash in SQL.<br />
+     * Values are hashed in lower case because the other queries of this DAO compare them under the case insensitive collation of the database : two
+     * subscriptions that only differ by case are the same subscription for {@link #existsByFilter(SubscriptionFilter, Plugin)}, so the unique index rejects
+     * the second one. The other equivalences of the collation, such as accents or trailing spaces, are not folded : the callers must not rely on them to
+     * identify subscriptions.
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return The hash
      */
-    @Override
-    public synchronized void insert( Subscription subscription, Plugin plugin )
+    public static String getSubscriptionHash( String strUserId, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
     {
-        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        StringBuilder sbValues = new StringBuilder( );
+        for ( String strValue : new String [ ] {
+                strUserId, strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource
+        } )
+        {
+            if ( strValue == null )
+            {
+                sbValues.append( HASH_NULL_LENGTH ).append( HASH_LENGTH_SEPARATOR );
+            }
+            else
+            {
+                String strNormalized = strValue.toLowerCase( Locale.ROOT );
+                sbValues.append( strNormalized.codePointCount( 0, strNormalized.length( ) ) ).append( HASH_LENGTH_SEPARATOR ).append( strNormalized );
+            }
+        }
+
+        try
+        {
+            byte [ ] hash = MessageDigest.getInstance( HASH_ALGORITHM ).digest( sbValues.toString( ).getBytes( StandardCharsets.UTF_8 ) );
+            StringBuilder sbHash = new StringBuilder( hash.length * 2 );
+            for ( byte b : hash )
+            {
+                sbHash.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+            }
+
+            return sbHash.toString( );
+        }
+        catch( NoSuchAlgorithmException e )
         {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Get the hash identifying a subscription
+     * 
+     * @param subscription
+     *            The subscription
+     * @return The hash
+     * @see #getSubscriptionHash(String, String, String, String)
+     */
+    private static String getSubscriptionHash( Subscription subscription )
+    {
+        return getSubscriptionHash( subscription.getUserId( ), subscription.getSubscriptionProvider( ), subscription.getSubscriptionKey( ),
+                subscription.getIdSubscribedResource( ) );
+    }
 
-            subscription.setIdSubscription( newPrimaryKey( plugin ) );
+    /**
+     * Check if an exception was caused by the violation of a unique index
+     * 
+     * @param e
+     *            The exception
+     * @return true if the exception was caused by a duplicate key, false otherwise
+     */
+    private static boolean isDuplicateKey( Throwable e )
+    {
+        for ( Throwable cause = e; cause != null; cause = cause.getCause( ) )
+        {
+            if ( cause instanceof SQLException )
+            {
+                SQLException sqlException = (SQLException) cause;
+
+                return SQL_STATE_UNIQUE_VIOLATION.equals( sqlException.getSQLState( ) )
+                        || ( SQL_STATE_INTEGRITY_VIOLATION.equals( sqlException.getSQLState( ) ) && sqlException.getErrorCode( ) == MYSQL_ERROR_DUPLICATE_ENTRY );
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Insert a subscription with an id allocated by the id allocator
+     * 
+     * @param subscription
+     *            The subscription to insert
+     * @param plugin
+     *            The plugin
+     */
+    private void insertWithAllocatedId( Subscription subscription, Plugin plugin )
+    {
+        subscription.setIdSubscription( _idAllocator.allocateId( plugin ) );
 
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
             daoUtil.setInt( 1, subscription.getIdSubscription( ) );
             daoUtil.setString( 2, subscription.getUserId( ) );
             daoUtil.setString( 3, subscription.getSubscriptionProvider( ) );
             daoUtil.setString( 4, subscription.getSubscriptionKey( ) );
             daoUtil.setString( 5, subscription.getIdSubscribedResource( ) );
+            daoUtil.setString( 6, getSubscriptionHash( subscription ) );
+
+            daoUtil.executeUpdate( );
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * Insert a subscription with an id generated by the database
+     * 
+     * @param subscription
+     *            The subscription to insert
+     * @param plugin
+     *            The plugin
+     */
+    private void insertWithGeneratedKey( Subscription subscription, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_GENERATED_KEY, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            daoUtil.setString( 1, subscription.getUserId( ) );
+            daoUtil.setString( 2, subscription.getSubscriptionProvider( ) );
+            daoUtil.setString( 3, subscription.getSubscriptionKey( ) );
+            daoUtil.setString( 4, subscription.getIdSubscribedResource( ) );
+            daoUtil.setString( 5, getSubscriptionHash( subscription ) );
 
             daoUtil.executeUpdate( );
+
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                subscription.setIdSubscription( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+
             daoUtil.free( );
         }
     }
@@ -153,6 +365,115 @@ public final class SubscriptionDAO implements ISubscriptionDAO
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insertBatch( Collection<Subscription> collectionSubscriptions, Plugin plugin )
+    {
+        if ( collectionSubscriptions.isEmpty( ) )
+        {
+            return;
+        }
+
+        if ( _idAllocator != null )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+            {
+                for ( Subscription subscription : collectionSubscriptions )
+                {
+                    subscription.setIdSubscription( _idAllocator.allocateId( plugin ) );
+                    daoUtil.setInt( 1, subscription.getIdSubscription( ) );
+                    daoUtil.setString( 2, subscription.getUserId( ) );
+                    daoUtil.setString( 3, subscription.getSubscriptionProvider( ) );
+                    daoUtil.setString( 4, subscription.getSubscriptionKey( ) );
+                    daoUtil.setString( 5, subscription.getIdSubscribedResource( ) );
+                    daoUtil.setString( 6, getSubscriptionHash( subscription ) );
+                    daoUtil.addBatch( );
+                }
+
+                daoUtil.executeBatch( );
+                daoUtil.free( );
+            }
+        }
+        else
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_GENERATED_KEY, Statement.RETURN_GENERATED_KEYS, plugin ) )
+            {
+                for ( Subscription subscription : collectionSubscriptions )
+                {
+                    daoUtil.setString( 1, subscription.getUserId( ) );
+                    daoUtil.setString( 2, subscription.getSubscriptionProvider( ) );
+                    daoUtil.setString( 3, subscription.getSubscriptionKey( ) );
+                    daoUtil.setString( 4, subscription.getIdSubscribedResource( ) );
+                    daoUtil.setString( 5, getSubscriptionHash( subscription ) );
+                    daoUtil.addBatch( );
+                }
+
+                daoUtil.executeBatch( );
+
+                // Generated keys are returned in the order of the batch
+                for ( Subscription subscription : collectionSubscriptions )
+                {
+                    if ( daoUtil.nextGeneratedKey( ) )
+                    {
+                        subscription.setIdSubscription( daoUtil.getGeneratedKeyInt( 1 ) );
+                    }
+                }
+
+                daoUtil.free( );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteBatch( int [ ] arrayIdSubscriptions, Plugin plugin )
+    {
+        if ( arrayIdSubscriptions.length == 0 )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, plugin ) )
+        {
+            for ( int nIdSubscription : arrayIdSubscriptions )
+            {
+                daoUtil.setInt( 1, nIdSubscription );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteByFilter( SubscriptionFilter filter, Plugin plugin )
+    {
+        List<Object> listValues = getFilterValues( filter );
+
+        if ( listValues.isEmpty( ) )
+        {
+            return 0;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_ALL + getFilterClause( filter ), plugin ) )
+        {
+            setFilterValues( daoUtil, listValues );
+
+            int nDeleted = daoUtil.executeUpdate( );
+            daoUtil.free( );
+
+            return nDeleted;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -166,7 +487,8 @@ public final class SubscriptionDAO implements ISubscriptionDAO
             daoUtil.setString( 2, subscription.getSubscriptionProvider( ) );
             daoUtil.setString( 3, subscription.getSubscriptionKey( ) );
             daoUtil.setString( 4, subscription.getIdSubscribedResource( ) );
-            daoUtil.setInt( 5, subscription.getIdSubscription( ) );
+            daoUtil.setString( 5, getSubscriptionHash( subscription ) );
+            daoUtil.setInt( 6, subscription.getIdSubscription( ) );
 
             daoUtil.executeUpdate( );
             daoUtil.free( );
@@ -206,93 +528,410 @@ public final class SubscriptionDAO implements ISubscriptionDAO
      * {@inheritDoc}
      */
     @Override
-    public List<Subscription> findByFilter( SubscriptionFilter filter )
+    public CompactSubscriptionList selectCompactSubscriptionsList( Plugin plugin )
+    {
+        CompactSubscriptionList subscriptionList = new CompactSubscriptionList( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECTALL, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                subscriptionList.add( daoUtil.getInt( 1 ), daoUtil.getString( 2 ), daoUtil.getString( 3 ), daoUtil.getString( 4 ), daoUtil.getString( 5 ) );
+            }
+
+            daoUtil.free( );
+        }
+        subscriptionList.trimToSize( );
+
+        return subscriptionList;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Subscription> findByFilter( SubscriptionFilter filter, Plugin plugin )
     {
         List<Subscription> listSubscription = new ArrayList<>( );
-        boolean bHasFilter = false;
-        StringBuilder sbSql = new StringBuilder( SQL_QUERY_SELECT );
-        if ( StringUtils.isNotEmpty( filter.getUserId( ) ) )
+        List<Object> listValues = getFilterValues( filter );
+
+        // The page closest to the upper bound is read backwards, then put back in ascending order
+        boolean bDescending = filter.getIdSubscriptionBefore( ) > 0 && filter.getIdSubscriptionAfter( ) <= 0 && filter.getLimit( ) > 0;
+        int nOrder = ORDER_NONE;
+
+        if ( filter.isPaginated( ) )
         {
-            sbSql.append( CONSTANT_WHERE );
-            sbSql.append( SQL_FILTER_ID_USER );
-            bHasFilter = true;
+            nOrder = bDescending ? ORDER_DESC_LIMIT : ( ( filter.getLimit( ) > 0 ) ? ORDER_ASC_LIMIT : ORDER_ASC );
         }
-        if ( filter.getSubscriptionProvider( ) != null )
+        if ( filter.getLimit( ) > 0 )
         {
-            if ( bHasFilter )
-            {
-                sbSql.append( CONSTANT_AND );
-            }
-            else
-            {
-                sbSql.append( CONSTANT_WHERE );
-                bHasFilter = true;
-            }
-            sbSql.append( SQL_FILTER_PROVIDER );
+            listValues.add( filter.getLimit( ) );
         }
-        if ( filter.getSubscriptionKey( ) != null )
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERIES_FIND_BY_FILTER [getFilterShape( filter )] [nOrder], plugin ) )
         {
-            if ( bHasFilter )
+            setFilterValues( daoUtil, listValues );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
             {
-                sbSql.append( CONSTANT_AND );
+                Subscription subscription = new Subscription( );
+                subscription.setIdSubscription( daoUtil.getInt( 1 ) );
+                subscription.setUserId( daoUtil.getString( 2 ) );
+                subscription.setSubscriptionProvider( daoUtil.getString( 3 ) );
+                subscription.setSubscriptionKey( daoUtil.getString( 4 ) );
+                subscription.setIdSubscribedResource( daoUtil.getString( 5 ) );
+                listSubscription.add( subscription );
             }
-            else
+
+            daoUtil.free( );
+        }
+
+        if ( bDescending )
+        {
+            Collections.reverse( listSubscription );
+        }
+
+        return listSubscription;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Deprecated
+    public List<Subscription> findByFilter( SubscriptionFilter filter )
+    {
+        return findByFilter( filter, PluginService.getPlugin( PLUGIN_NAME ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int countByFilter( SubscriptionFilter filter, Plugin plugin )
+    {
+        int nCount = 0;
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_COUNT + getFilterClause( filter ), plugin ) )
+        {
+            setFilterValues( daoUtil, getFilterValues( filter ) );
+            daoUtil.executeQuery( );
+
+            if ( daoUtil.next( ) )
             {
-                sbSql.append( CONSTANT_WHERE );
-                bHasFilter = true;
+                nCount = daoUtil.getInt( 1 );
             }
-            sbSql.append( SQL_FILTER_SUBSCRIPTION_KEY );
+
+            daoUtil.free( );
         }
-        if ( filter.getIdSubscribedResource( ) != null )
+
+        return nCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Integer> selectIdBoundaries( SubscriptionFilter filter, int nChunkSize, Plugin plugin )
+    {
+        SubscriptionFilter criteria = new SubscriptionFilter( filter.getUserId( ), filter.getSubscriptionProvider( ), filter.getSubscriptionKey( ),
+                filter.getIdSubscribedResource( ) );
+        List<Integer> listBoundaries = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_IDS + getFilterClause( criteria ) + SQL_ORDER_BY_ID_ASC, plugin ) )
         {
-            if ( bHasFilter )
+            setFilterValues( daoUtil, getFilterValues( criteria ) );
+            daoUtil.executeQuery( );
+
+            int nCount = 0;
+            int nIdSubscription = 0;
+            while ( daoUtil.next( ) )
             {
-                sbSql.append( CONSTANT_AND );
+                nIdSubscription = daoUtil.getInt( 1 );
+                if ( ++nCount % nChunkSize == 0 )
+                {
+                    listBoundaries.add( nIdSubscription );
+                }
             }
-            else
+
+            if ( nCount % nChunkSize != 0 )
             {
-                sbSql.append( CONSTANT_WHERE );
-                bHasFilter = true;
+                listBoundaries.add( nIdSubscription );
             }
-            sbSql.append( SQL_FILTER_ID_SUBSCRIBED_RESOURCE );
+
+            daoUtil.free( );
         }
 
-        int nIndex = 1;
-        try ( DAOUtil daoUtil = new DAOUtil( sbSql.toString( ) ) )
+        return listBoundaries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean existsByFilter( SubscriptionFilter filter, Plugin plugin )
+    {
+        SubscriptionFilter criteria = new SubscriptionFilter( filter.getUserId( ), filter.getSubscriptionProvider( ), filter.getSubscriptionKey( ),
+                filter.getIdSubscribedResource( ) );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_EXISTS + getFilterClause( criteria ) + SQL_LIMIT_ONE, plugin ) )
+        {
+            setFilterValues( daoUtil, getFilterValues( criteria ) );
+            daoUtil.executeQuery( );
+
+            boolean bExists = daoUtil.next( );
+            daoUtil.free( );
+
+            return bExists;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitByFilter( SubscriptionFilter filter, int nFetchSize, Consumer<Subscription> visitor, Plugin plugin )
+    {
+        // Rows are read by pages of ascending ids through DAOUtil, so that the visit uses the connection of the current transaction if there is one
+        SubscriptionFilter page = new SubscriptionFilter( filter.getUserId( ), filter.getSubscriptionProvider( ), filter.getSubscriptionKey( ),
+                filter.getIdSubscribedResource( ) );
+        page.setIdSubscriptionBefore( filter.getIdSubscriptionBefore( ) );
+        page.setIdSubscriptionAfter( filter.getIdSubscriptionAfter( ) );
+        int nPageSize = Math.max( nFetchSize, 1 );
+
+        List<Subscription> listSubscription;
+
+        do
         {
-            if ( StringUtils.isNotEmpty( filter.getUserId( ) ) )
+            listSubscription = new ArrayList<>( nPageSize );
+            List<Object> listValues = getFilterValues( page );
+            listValues.add( nPageSize );
+
+            // Always in ascending order : the first page of a filter with only an upper bound would otherwise be read backwards by findByFilter
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERIES_FIND_BY_FILTER [getFilterShape( page )] [ORDER_ASC_LIMIT], plugin ) )
             {
-                daoUtil.setString( nIndex++, filter.getUserId( ) );
+                setFilterValues( daoUtil, listValues );
+                daoUtil.executeQuery( );
+
+                while ( daoUtil.next( ) )
+                {
+                    Subscription subscription = new Subscription( );
+                    subscription.setIdSubscription( daoUtil.getInt( 1 ) );
+                    subscription.setUserId( daoUtil.getString( 2 ) );
+                    subscription.setSubscriptionProvider( daoUtil.getString( 3 ) );
+                    subscription.setSubscriptionKey( daoUtil.getString( 4 ) );
+                    subscription.setIdSubscribedResource( daoUtil.getString( 5 ) );
+                    listSubscription.add( subscription );
+                }
+
+                daoUtil.free( );
             }
-            if ( filter.getSubscriptionProvider( ) != null )
+
+            for ( Subscription subscription : listSubscription )
             {
-                daoUtil.setString( nIndex++, filter.getSubscriptionProvider( ) );
+                visitor.accept( subscription );
             }
-            if ( filter.getSubscriptionKey( ) != null )
+
+            if ( !listSubscription.isEmpty( ) )
             {
-                daoUtil.setString( nIndex++, filter.getSubscriptionKey( ) );
+                page.setIdSubscriptionAfter( listSubscription.get( listSubscription.size( ) - 1 ).getIdSubscription( ) );
             }
-            if ( filter.getIdSubscribedResource( ) != null )
+        }
+        while ( listSubscription.size( ) == nPageSize );
+    }
+
+    /**
+     * Get the WHERE clause matching a filter
+     * 
+     * @param filter
+     *            The filter
+     * @return The WHERE clause, or an empty string if the filter has no criteria
+     */
+    static String getFilterClause( SubscriptionFilter filter )
+    {
+        return SQL_FILTER_CLAUSES [getFilterShape( filter )];
+    }
+
+    /**
+     * Get the shape of a filter, as the combination of the criteria it uses
+     * 
+     * @param filter
+     *            The filter
+     * @return The shape of the filter, as an index of {@link #SQL_FILTER_CLAUSES}
+     */
+    private static int getFilterShape( SubscriptionFilter filter )
+    {
+        int nShape = 0;
+        if ( StringUtils.isNotEmpty( filter.getUserId( ) ) )
+        {
+            nShape |= SHAPE_USER;
+        }
+        if ( filter.getSubscriptionProvider( ) != null )
+        {
+            nShape |= SHAPE_PROVIDER;
+        }
+        if ( filter.getSubscriptionKey( ) != null )
+        {
+            nShape |= SHAPE_SUBSCRIPTION_KEY;
+        }
+        if ( filter.getIdSubscribedResource( ) != null )
+        {
+            nShape |= SHAPE_ID_SUBSCRIBED_RESOURCE;
+        }
+        if ( filter.getIdSubscriptionAfter( ) > 0 )
+        {
+            nShape |= SHAPE_ID_SUBSCRIPTION_AFTER;
+        }
+        if ( filter.getIdSubscriptionBefore( ) > 0 )
+        {
+            nShape |= SHAPE_ID_SUBSCRIPTION_BEFORE;
+        }
+
+        return nShape;
+    }
+
+    /**
+     * Build the WHERE clauses of every filter shape
+     * 
+     * @return The WHERE clauses, indexed by filter shape
+     */
+    private static String [ ] buildFilterClauses( )
+    {
+        String [ ] criteria = {
+                SQL_FILTER_ID_USER, SQL_FILTER_PROVIDER, SQL_FILTER_SUBSCRIPTION_KEY, SQL_FILTER_ID_SUBSCRIBED_RESOURCE, SQL_FILTER_ID_SUBSCRIPTION_AFTER,
+                SQL_FILTER_ID_SUBSCRIPTION_BEFORE
+        };
+        String [ ] clauses = new String [ 1 << criteria.length];
+
+        for ( int nShape = 0; nShape < clauses.length; nShape++ )
+        {
+            StringBuilder sbSql = new StringBuilder( );
+            for ( int i = 0; i < criteria.length; i++ )
             {
-                // Warning, no increment here !
-                daoUtil.setString( nIndex, filter.getIdSubscribedResource( ) );
+                if ( ( nShape & ( 1 << i ) ) != 0 )
+                {
+                    appendCriteria( sbSql, criteria [i] );
+                }
             }
-            daoUtil.executeQuery( );
+            clauses [nShape] = sbSql.toString( );
+        }
 
-            while ( daoUtil.next( ) )
+        return clauses;
+    }
+
+    /**
+     * Append a criteria to a WHERE clause
+     * 
+     * @param sbSql
+     *            The WHERE clause being built
+     * @param strCriteria
+     *            The criteria to append
+     */
+    private static void appendCriteria( StringBuilder sbSql, String strCriteria )
+    {
+        sbSql.append( ( sbSql.length( ) == 0 ) ? CONSTANT_WHERE : CONSTANT_AND );
+        sbSql.append( strCriteria );
+    }
+
+    /**
+     * Build the queries of findByFilter for every filter shape and every order
+     * 
+     * @return The queries, indexed by filter shape then by order
+     */
+    private static String [ ] [ ] buildFindByFilterQueries( )
+    {
+        String [ ] orders = {
+                "", SQL_ORDER_BY_ID_ASC, SQL_ORDER_BY_ID_ASC + SQL_LIMIT, SQL_ORDER_BY_ID_DESC + SQL_LIMIT
+        };
+        String [ ] [ ] queries = new String [ SQL_FILTER_CLAUSES.length] [ orders.length];
+
+        for ( int nShape = 0; nShape < SQL_FILTER_CLAUSES.length; nShape++ )
+        {
+            for ( int nOrder = 0; nOrder < orders.length; nOrder++ )
             {
-                Subscription subscription = new Subscription( );
-                subscription.setIdSubscription( daoUtil.getInt( 1 ) );
-                subscription.setUserId( daoUtil.getString( 2 ) );
-                subscription.setSubscriptionProvider( daoUtil.getString( 3 ) );
-                subscription.setSubscriptionKey( daoUtil.getString( 4 ) );
-                subscription.setIdSubscribedResource( daoUtil.getString( 5 ) );
-                listSubscription.add( subscription );
+                queries [nShape] [nOrder] = SQL_QUERY_SELECT + SQL_FILTER_CLAUSES [nShape] + orders [nOrder];
             }
+        }
 
-            daoUtil.free( );
+        return queries;
+    }
+
+    /**
+     * Get the values of the criteria of a filter, in the order of the WHERE clause returned by {@link #getFilterClause(SubscriptionFilter)}
+     * 
+     * @param filter
+     *            The filter
+     * @return The values of the criteria
+     */
+    static List<Object> getFilterValues( SubscriptionFilter filter )
+    {
+        List<Object> listValues = new ArrayList<>( 7 );
+        if ( StringUtils.isNotEmpty( filter.getUserId( ) ) )
+        {
+            listValues.add( filter.getUserId( ) );
+        }
+        if ( filter.getSubscriptionProvider( ) != null )
+        {
+            listValues.add( filter.getSubscriptionProvider( ) );
+        }
+        if ( filter.getSubscriptionKey( ) != null )
+        {
+            listValues.add( filter.getSubscriptionKey( ) );
+        }
+        if ( filter.getIdSubscribedResource( ) != null )
+        {
+            listValues.add( filter.getIdSubscribedResource( ) );
+        }
+        if ( filter.getIdSubscriptionAfter( ) > 0 )
+        {
+            listValues.add( filter.getIdSubscriptionAfter( ) );
+        }
+        if ( filter.getIdSubscriptionBefore( ) > 0 )
+        {
+            listValues.add( filter.getIdSubscriptionBefore( ) );
         }
 
-        return listSubscription;
+        return listValues;
+    }
+
+    /**
+     * Set the values of the criteria of a filter
+     * 
+     * @param daoUtil
+     *            The DAOUtil
+     * @param listValues
+     *            The values returned by {@link #getFilterValues(SubscriptionFilter)}
+     */
+    private static void setFilterValues( DAOUtil daoUtil, List<Object> listValues )
+    {
+        setFilterValues( daoUtil, listValues, 1 );
+    }
+
+    /**
+     * Set the values of the criteria of a filter, starting at a given parameter index
+     * 
+     * @param daoUtil
+     *            The DAOUtil
+     * @param listValues
+     *            The values returned by {@link #getFilterValues(SubscriptionFilter)}
+     * @param nFirstIndex
+     *            The index of the parameter of the first value
+     */
+    static void setFilterValues( DAOUtil daoUtil, List<Object> listValues, int nFirstIndex )
+    {
+        int nIndex = nFirstIndex;
+        for ( Object value : listValues )
+        {
+            if ( value instanceof Integer )
+            {
+                daoUtil.setInt( nIndex++, (Integer) value );
+            }
+            else
+            {
+                daoUtil.setString( nIndex++, (String) value );
+            }
+        }
     }
 }
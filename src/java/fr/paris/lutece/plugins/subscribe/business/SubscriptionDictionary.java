@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of strings that take few distinct values, such as subscription providers and subscription keys. Each string is given a small integer code
+ * once, and is then stored only once whatever the number of subscriptions using it. The code 0 stands for null.
+ */
+public final class SubscriptionDictionary
+{
+    private static final int CODE_NULL = 0;
+
+    private final Map<String, Integer> _mapCodes = new ConcurrentHashMap<>( );
+    private volatile String [ ] _values = new String [ ] {
+            null
+    };
+
+    /**
+     * Get the code of a string, giving it a new code if it is not in the dictionary yet
+     * 
+     * @param strValue
+     *            The string, or null
+     * @return The code of the string
+     */
+    public int getCode( String strValue )
+    {
+        if ( strValue == null )
+        {
+            return CODE_NULL;
+        }
+
+        Integer nCode = _mapCodes.get( strValue );
+
+        return ( nCode != null ) ? nCode : addValue( strValue );
+    }
+
+    /**
+     * Get the string of a code
+     * 
+     * @param nCode
+     *            The code returned by {@link #getCode(String)}
+     * @return The string, or null for the code 0
+     */
+    public String getValue( int nCode )
+    {
+        return _values [nCode];
+    }
+
+    /**
+     * Get the number of strings in the dictionary
+     * 
+     * @return The number of strings in the dictionary
+     */
+    public int size( )
+    {
+        return _values.length - 1;
+    }
+
+    /**
+     * Add a string to the dictionary
+     * 
+     * @param strValue
+     *            The string
+     * @return The code of the string
+     */
+    private synchronized int addValue( String strValue )
+    {
+        Integer nCode = _mapCodes.get( strValue );
+
+        if ( nCode == null )
+        {
+            // The array is published before the code, so that a code is never read before its value
+            String [ ] values = Arrays.copyOf( _values, _values.length + 1 );
+            nCode = _values.length;
+            values [nCode] = strValue;
+            _values = values;
+            _mapCodes.put( strValue, nCode );
+        }
+
+        return nCode;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class provides Data Access methods for the events waiting in digest windows
+ */
+public final class SubscriptionDigestEventDAO implements ISubscriptionDigestEventDAO
+{
+    // Constants
+    private static final String SQL_QUERY_INSERT = "INSERT INTO subscribe_digest_event ( subscription_provider, subscription_key, id_subscribed_resource, payload, date_event ) VALUES ( ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_SELECT_FIRST_EVENT_BY_RESOURCE = "SELECT subscription_provider, subscription_key, id_subscribed_resource, MIN( date_event ) FROM subscribe_digest_event GROUP BY subscription_provider, subscription_key, id_subscribed_resource ";
+    private static final String SQL_QUERY_SELECT_EVENTS_FOR_UPDATE = "SELECT id_event, subscription_provider, subscription_key, id_subscribed_resource, payload, date_event FROM subscribe_digest_event WHERE subscription_provider = ? AND subscription_key = ? AND id_subscribed_resource = ? ORDER BY id_event ASC FOR UPDATE ";
+    private static final String SQL_QUERY_DELETE = "DELETE FROM subscribe_digest_event WHERE id_event = ? ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert( SubscriptionDigestEvent event, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            daoUtil.setString( 1, event.getSubscriptionProvider( ) );
+            daoUtil.setString( 2, event.getSubscriptionKey( ) );
+            daoUtil.setString( 3, event.getIdSubscribedResource( ) );
+            daoUtil.setString( 4, event.getPayload( ) );
+            daoUtil.setTimestamp( 5, event.getDateEvent( ) );
+
+            daoUtil.executeUpdate( );
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SubscriptionDigestEvent> selectFirstEventByResource( Plugin plugin )
+    {
+        List<SubscriptionDigestEvent> listEvents = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_FIRST_EVENT_BY_RESOURCE, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                SubscriptionDigestEvent event = new SubscriptionDigestEvent( );
+                event.setSubscriptionProvider( daoUtil.getString( 1 ) );
+                event.setSubscriptionKey( daoUtil.getString( 2 ) );
+                event.setIdSubscribedResource( daoUtil.getString( 3 ) );
+                event.setDateEvent( daoUtil.getTimestamp( 4 ) );
+                listEvents.add( event );
+            }
+
+            daoUtil.free( );
+        }
+
+        return listEvents;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SubscriptionDigestEvent> selectEventsForUpdate( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource,
+            Plugin plugin )
+    {
+        List<SubscriptionDigestEvent> listEvents = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_EVENTS_FOR_UPDATE, plugin ) )
+        {
+            daoUtil.setString( 1, strSubscriptionProvider );
+            daoUtil.setString( 2, strSubscriptionKey );
+            daoUtil.setString( 3, strIdSubscribedResource );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                SubscriptionDigestEvent event = new SubscriptionDigestEvent( );
+                event.setIdEvent( daoUtil.getInt( 1 ) );
+                event.setSubscriptionProvider( daoUtil.getString( 2 ) );
+                event.setSubscriptionKey( daoUtil.getString( 3 ) );
+                event.setIdSubscribedResource( daoUtil.getString( 4 ) );
+                event.setPayload( daoUtil.getString( 5 ) );
+                event.setDateEvent( daoUtil.getTimestamp( 6 ) );
+                listEvents.add( event );
+            }
+
+            daoUtil.free( );
+        }
+
+        return listEvents;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteBatch( Collection<Integer> collectionIdEvents, Plugin plugin )
+    {
+        if ( collectionIdEvents.isEmpty( ) )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, plugin ) )
+        {
+            for ( Integer nIdEvent : collectionIdEvents )
+            {
+                daoUtil.setInt( 1, nIdEvent );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+            daoUtil.free( );
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import java.sql.Timestamp;
+
+/**
+ * Notification of the subscribers of a resource, sent in background by chunks of subscriptions
+ */
+public class SubscriptionFanOut
+{
+    private int _nIdFanOut;
+    private String _strSubscriptionProvider;
+    private String _strSubscriptionKey;
+    private String _strIdSubscribedResource;
+    private String _strPayload;
+    private Timestamp _dateCreation;
+
+    /**
+     * Get the id of the fan-out
+     * 
+     * @return The id of the fan-out
+     */
+    public int getIdFanOut( )
+    {
+        return _nIdFanOut;
+    }
+
+    /**
+     * Set the id of the fan-out
+     * 
+     * @param nIdFanOut
+     *            The id of the fan-out
+     */
+    public void setIdFanOut( int nIdFanOut )
+    {
+        _nIdFanOut = nIdFanOut;
+    }
+
+    /**
+     * Get the subscription provider of the notified subscriptions
+     * 
+     * @return The subscription provider
+     */
+    public String getSubscriptionProvider( )
+    {
+        return _strSubscriptionProvider;
+    }
+
+    /**
+     * Set the subscription provider of the notified subscriptions
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     */
+    public void setSubscriptionProvider( String strSubscriptionProvider )
+    {
+        _strSubscriptionProvider = strSubscriptionProvider;
+    }
+
+    /**
+     * Get the subscription key of the notified subscriptions
+     * 
+     * @return The subscription key
+     */
+    public String getSubscriptionKey( )
+    {
+        return _strSubscriptionKey;
+    }
+
+    /**
+     * Set the subscription key of the notified subscriptions
+     * 
+     * @param strSubscriptionKey
+     *            The subscription key
+     */
+    public void setSubscriptionKey( String strSubscriptionKey )
+    {
+        _strSubscriptionKey = strSubscriptionKey;
+    }
+
+    /**
+     * Get the id of the resource whose subscribers are notified
+     * 
+     * @return The id of the subscribed resource
+     */
+    public String getIdSubscribedResource( )
+    {
+        return _strIdSubscribedResource;
+    }
+
+    /**
+     * Set the id of the resource whose subscribers are notified
+     * 
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     */
+    public void setIdSubscribedResource( String strIdSubscribedResource )
+    {
+        _strIdSubscribedResource = strIdSubscribedResource;
+    }
+
+    /**
+     * Get the payload given to the provider with each chunk of subscriptions
+     * 
+     * @return The payload
+     */
+    public String getPayload( )
+    {
+        return _strPayload;
+    }
+
+    /**
+     * Set the payload given to the provider with each chunk of subscriptions
+     * 
+     * @param strPayload
+     *            The payload
+     */
+    public void setPayload( String strPayload )
+    {
+        _strPayload = strPayload;
+    }
+
+    /**
+     * Get the date of creation of the fan-out
+     * 
+     * @return The date of creation
+     */
+    public Timestamp getDateCreation( )
+    {
+        return _dateCreation;
+    }
+
+    /**
+     * Set the date of creation of the fan-out
+     * 
+     * @param dateCreation
+     *            The date of creation
+     */
+    public void setDateCreation( Timestamp dateCreation )
+    {
+        _dateCreation = dateCreation;
+    }
+}
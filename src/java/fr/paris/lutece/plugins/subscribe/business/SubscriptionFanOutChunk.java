@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import java.sql.Timestamp;
+
+/**
+ * Range of subscriptions of a fan-out, notified by a single worker. The checkpoint of the chunk is the id of the last notified subscription
+ */
+public class SubscriptionFanOutChunk
+{
+    private int _nIdChunk;
+    private SubscriptionFanOut _fanOut;
+    private int _nIdSubscriptionFrom;
+    private int _nIdSubscriptionTo;
+    private int _nNbAttempts;
+    private Timestamp _dateLeaseEnd;
+
+    /**
+     * Get the id of the chunk
+     * 
+     * @return The id of the chunk
+     */
+    public int getIdChunk( )
+    {
+        return _nIdChunk;
+    }
+
+    /**
+     * Set the id of the chunk
+     * 
+     * @param nIdChunk
+     *            The id of the chunk
+     */
+    public void setIdChunk( int nIdChunk )
+    {
+        _nIdChunk = nIdChunk;
+    }
+
+    /**
+     * Get the fan-out of the chunk
+     * 
+     * @return The fan-out
+     */
+    public SubscriptionFanOut getFanOut( )
+    {
+        return _fanOut;
+    }
+
+    /**
+     * Set the fan-out of the chunk
+     * 
+     * @param fanOut
+     *            The fan-out
+     */
+    public void setFanOut( SubscriptionFanOut fanOut )
+    {
+        _fanOut = fanOut;
+    }
+
+    /**
+     * Get the id after which subscriptions remain to be notified
+     * 
+     * @return The id of the last notified subscription, or the id before the first subscription of the chunk
+     */
+    public int getIdSubscriptionFrom( )
+    {
+        return _nIdSubscriptionFrom;
+    }
+
+    /**
+     * Set the id after which subscriptions remain to be notified
+     * 
+     * @param nIdSubscriptionFrom
+     *            The id of the last notified subscription, or the id before the first subscription of the chunk
+     */
+    public void setIdSubscriptionFrom( int nIdSubscriptionFrom )
+    {
+        _nIdSubscriptionFrom = nIdSubscriptionFrom;
+    }
+
+    /**
+     * Get the greatest id of the subscriptions of the chunk
+     * 
+     * @return The greatest id of the chunk
+     */
+    public int getIdSubscriptionTo( )
+    {
+        return _nIdSubscriptionTo;
+    }
+
+    /**
+     * Set the greatest id of the subscriptions of the chunk
+     * 
+     * @param nIdSubscriptionTo
+     *            The greatest id of the chunk
+     */
+    public void setIdSubscriptionTo( int nIdSubscriptionTo )
+    {
+        _nIdSubscriptionTo = nIdSubscriptionTo;
+    }
+
+    /**
+     * Get the number of times the chunk was claimed by a worker
+     * 
+     * @return The number of attempts
+     */
+    public int getNbAttempts( )
+    {
+        return _nNbAttempts;
+    }
+
+    /**
+     * Set the number of times the chunk was claimed by a worker
+     * 
+     * @param nNbAttempts
+     *            The number of attempts
+     */
+    public void setNbAttempts( int nNbAttempts )
+    {
+        _nNbAttempts = nNbAttempts;
+    }
+
+    /**
+     * Get the date from which the chunk can be claimed again
+     * 
+     * @return The end of the lease
+     */
+    public Timestamp getDateLeaseEnd( )
+    {
+        return _dateLeaseEnd;
+    }
+
+    /**
+     * Set the date from which the chunk can be claimed again
+     * 
+     * @param dateLeaseEnd
+     *            The end of the lease
+     */
+    public void setDateLeaseEnd( Timestamp dateLeaseEnd )
+    {
+        _dateLeaseEnd = dateLeaseEnd;
+    }
+}
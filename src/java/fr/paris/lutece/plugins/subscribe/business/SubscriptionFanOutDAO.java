@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class provides Data Access methods for fan-outs and their chunks
+ */
+public final class SubscriptionFanOutDAO implements ISubscriptionFanOutDAO
+{
+    // Constants
+    private static final String SQL_QUERY_INSERT = "INSERT INTO subscribe_fanout ( subscription_provider, subscription_key, id_subscribed_resource, payload, date_creation ) VALUES ( ?, ?, ?, ?, ? ) ";
+    private static final String SQL_QUERY_INSERT_CHUNK = "INSERT INTO subscribe_fanout_chunk ( id_fanout, id_subscription_from, id_subscription_to, nb_attempts, date_lease_end ) VALUES ( ?, ?, ?, 0, ? ) ";
+    private static final String SQL_QUERY_SELECT_CLAIMABLE_CHUNKS = "SELECT c.id_chunk, c.id_subscription_from, c.id_subscription_to, c.nb_attempts, c.date_lease_end, f.id_fanout, f.subscription_provider, f.subscription_key, f.id_subscribed_resource, f.payload, f.date_creation FROM subscribe_fanout_chunk c INNER JOIN subscribe_fanout f ON f.id_fanout = c.id_fanout WHERE c.date_lease_end <= ? ORDER BY c.id_chunk ASC LIMIT ? ";
+    private static final String SQL_QUERY_CLAIM = "UPDATE subscribe_fanout_chunk SET nb_attempts = ?, date_lease_end = ? WHERE id_chunk = ? AND nb_attempts = ? ";
+    private static final String SQL_QUERY_CHECKPOINT = "UPDATE subscribe_fanout_chunk SET id_subscription_from = ?, date_lease_end = ? WHERE id_chunk = ? AND nb_attempts = ? ";
+    private static final String SQL_QUERY_DELETE_CHUNK = "DELETE FROM subscribe_fanout_chunk WHERE id_chunk = ? ";
+    private static final String SQL_QUERY_DELETE_IF_COMPLETE = "DELETE FROM subscribe_fanout WHERE id_fanout = ? AND NOT EXISTS ( SELECT id_chunk FROM subscribe_fanout_chunk WHERE id_fanout = ? ) ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert( SubscriptionFanOut fanOut, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, Statement.RETURN_GENERATED_KEYS, plugin ) )
+        {
+            daoUtil.setString( 1, fanOut.getSubscriptionProvider( ) );
+            daoUtil.setString( 2, fanOut.getSubscriptionKey( ) );
+            daoUtil.setString( 3, fanOut.getIdSubscribedResource( ) );
+            daoUtil.setString( 4, fanOut.getPayload( ) );
+            daoUtil.setTimestamp( 5, fanOut.getDateCreation( ) );
+            daoUtil.executeUpdate( );
+
+            if ( daoUtil.nextGeneratedKey( ) )
+            {
+                fanOut.setIdFanOut( daoUtil.getGeneratedKeyInt( 1 ) );
+            }
+
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insertChunks( Collection<SubscriptionFanOutChunk> collectionChunks, Plugin plugin )
+    {
+        if ( collectionChunks.isEmpty( ) )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_CHUNK, plugin ) )
+        {
+            for ( SubscriptionFanOutChunk chunk : collectionChunks )
+            {
+                daoUtil.setInt( 1, chunk.getFanOut( ).getIdFanOut( ) );
+                daoUtil.setInt( 2, chunk.getIdSubscriptionFrom( ) );
+                daoUtil.setInt( 3, chunk.getIdSubscriptionTo( ) );
+                daoUtil.setTimestamp( 4, chunk.getDateLeaseEnd( ) );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SubscriptionFanOutChunk> selectClaimableChunks( Timestamp date, int nLimit, Plugin plugin )
+    {
+        List<SubscriptionFanOutChunk> listChunks = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_CLAIMABLE_CHUNKS, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, date );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                SubscriptionFanOutChunk chunk = new SubscriptionFanOutChunk( );
+                chunk.setIdChunk( daoUtil.getInt( 1 ) );
+                chunk.setIdSubscriptionFrom( daoUtil.getInt( 2 ) );
+                chunk.setIdSubscriptionTo( daoUtil.getInt( 3 ) );
+                chunk.setNbAttempts( daoUtil.getInt( 4 ) );
+                chunk.setDateLeaseEnd( daoUtil.getTimestamp( 5 ) );
+
+                SubscriptionFanOut fanOut = new SubscriptionFanOut( );
+                fanOut.setIdFanOut( daoUtil.getInt( 6 ) );
+                fanOut.setSubscriptionProvider( daoUtil.getString( 7 ) );
+                fanOut.setSubscriptionKey( daoUtil.getString( 8 ) );
+                fanOut.setIdSubscribedResource( daoUtil.getString( 9 ) );
+                fanOut.setPayload( daoUtil.getString( 10 ) );
+                fanOut.setDateCreation( daoUtil.getTimestamp( 11 ) );
+                chunk.setFanOut( fanOut );
+                listChunks.add( chunk );
+            }
+
+            daoUtil.free( );
+        }
+
+        return listChunks;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean claim( SubscriptionFanOutChunk chunk, Timestamp dateLeaseEnd, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CLAIM, plugin ) )
+        {
+            daoUtil.setInt( 1, chunk.getNbAttempts( ) + 1 );
+            daoUtil.setTimestamp( 2, dateLeaseEnd );
+            daoUtil.setInt( 3, chunk.getIdChunk( ) );
+            daoUtil.setInt( 4, chunk.getNbAttempts( ) );
+
+            // Another worker claimed the chunk first if no row was updated
+            boolean bClaimed = daoUtil.executeUpdate( ) == 1;
+            daoUtil.free( );
+
+            if ( bClaimed )
+            {
+                chunk.setNbAttempts( chunk.getNbAttempts( ) + 1 );
+                chunk.setDateLeaseEnd( dateLeaseEnd );
+            }
+
+            return bClaimed;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkpoint( SubscriptionFanOutChunk chunk, int nIdSubscriptionFrom, Timestamp dateLeaseEnd, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CHECKPOINT, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdSubscriptionFrom );
+            daoUtil.setTimestamp( 2, dateLeaseEnd );
+            daoUtil.setInt( 3, chunk.getIdChunk( ) );
+            daoUtil.setInt( 4, chunk.getNbAttempts( ) );
+
+            // The chunk was claimed again if its number of attempts changed
+            boolean bRecorded = daoUtil.executeUpdate( ) == 1;
+            daoUtil.free( );
+
+            if ( bRecorded )
+            {
+                chunk.setIdSubscriptionFrom( nIdSubscriptionFrom );
+                chunk.setDateLeaseEnd( dateLeaseEnd );
+            }
+
+            return bRecorded;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteChunk( int nIdChunk, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_CHUNK, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdChunk );
+
+            daoUtil.executeUpdate( );
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean deleteIfComplete( int nIdFanOut, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_IF_COMPLETE, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdFanOut );
+            daoUtil.setInt( 2, nIdFanOut );
+
+            boolean bDeleted = daoUtil.executeUpdate( ) == 1;
+            daoUtil.free( );
+
+            return bDeleted;
+        }
+    }
+}
@@ -42,6 +42,9 @@ public class SubscriptionFilter
     private String _strSubscriptionProvider;
     private String _strSubscriptionKey;
     private String _strIdSubscribedResource;
+    private int _nIdSubscriptionAfter;
+    private int _nIdSubscriptionBefore;
+    private int _nLimit;
 
     /**
      * Create a new SubscriptionFilter
@@ -154,4 +157,78 @@ public class SubscriptionFilter
     {
         _strIdSubscribedResource = strIdSubscribedResource;
     }
+
+    /**
+     * Get the id after which subscriptions are returned. Used for keyset pagination.
+     * 
+     * @return The id after which subscriptions are returned, or 0 if there is no lower bound
+     */
+    public int getIdSubscriptionAfter( )
+    {
+        return _nIdSubscriptionAfter;
+    }
+
+    /**
+     * Only return subscriptions whose id is greater than a given id. Subscriptions are then returned by ascending id.
+     * 
+     * @param nIdSubscriptionAfter
+     *            The id after which subscriptions are returned, or 0 to remove the lower bound
+     */
+    public void setIdSubscriptionAfter( int nIdSubscriptionAfter )
+    {
+        _nIdSubscriptionAfter = nIdSubscriptionAfter;
+    }
+
+    /**
+     * Get the id before which subscriptions are returned. Used for keyset pagination.
+     * 
+     * @return The id before which subscriptions are returned, or 0 if there is no upper bound
+     */
+    public int getIdSubscriptionBefore( )
+    {
+        return _nIdSubscriptionBefore;
+    }
+
+    /**
+     * Only return subscriptions whose id is lower than a given id. If a limit is set and no lower bound is set, the subscriptions closest to this id are
+     * returned.
+     * 
+     * @param nIdSubscriptionBefore
+     *            The id before which subscriptions are returned, or 0 to remove the upper bound
+     */
+    public void setIdSubscriptionBefore( int nIdSubscriptionBefore )
+    {
+        _nIdSubscriptionBefore = nIdSubscriptionBefore;
+    }
+
+    /**
+     * Get the maximum number of subscriptions to return
+     * 
+     * @return The maximum number of subscriptions to return, or 0 if there is no limit
+     */
+    public int getLimit( )
+    {
+        return _nLimit;
+    }
+
+    /**
+     * Set the maximum number of subscriptions to return
+     * 
+     * @param nLimit
+     *            The maximum number of subscriptions to return, or 0 for no limit
+     */
+    public void setLimit( int nLimit )
+    {
+        _nLimit = nLimit;
+    }
+
+    /**
+     * Check if this filter selects a page of subscriptions rather than every matching subscription
+     * 
+     * @return True if an id bound or a limit is set, false otherwise
+     */
+    public boolean isPaginated( )
+    {
+        return _nIdSubscriptionAfter > 0 || _nIdSubscriptionBefore > 0 || _nLimit > 0;
+    }
 }
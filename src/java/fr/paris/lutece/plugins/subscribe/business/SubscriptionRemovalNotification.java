@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import java.sql.Timestamp;
+
+/**
+ * Pending notification of the removal of a subscription to its provider
+ */
+public class SubscriptionRemovalNotification
+{
+    private int _nIdNotification;
+    private Subscription _subscription;
+    private int _nNbAttempts;
+    private Timestamp _dateNextAttempt;
+
+    /**
+     * Get the id of the notification
+     * 
+     * @return The id of the notification
+     */
+    public int getIdNotification( )
+    {
+        return _nIdNotification;
+    }
+
+    /**
+     * Set the id of the notification
+     * 
+     * @param nIdNotification
+     *            The id of the notification
+     */
+    public void setIdNotification( int nIdNotification )
+    {
+        _nIdNotification = nIdNotification;
+    }
+
+    /**
+     * Get the removed subscription
+     * 
+     * @return The removed subscription
+     */
+    public Subscription getSubscription( )
+    {
+        return _subscription;
+    }
+
+    /**
+     * Set the removed subscription
+     * 
+     * @param subscription
+     *            The removed subscription
+     */
+    public void setSubscription( Subscription subscription )
+    {
+        _subscription = subscription;
+    }
+
+    /**
+     * Get the number of attempts already made to notify the provider
+     * 
+     * @return The number of attempts
+     */
+    public int getNbAttempts( )
+    {
+        return _nNbAttempts;
+    }
+
+    /**
+     * Set the number of attempts already made to notify the provider
+     * 
+     * @param nNbAttempts
+     *            The number of attempts
+     */
+    public void setNbAttempts( int nNbAttempts )
+    {
+        _nNbAttempts = nNbAttempts;
+    }
+
+    /**
+     * Get the date from which the provider can be notified
+     * 
+     * @return The date of the next attempt
+     */
+    public Timestamp getDateNextAttempt( )
+    {
+        return _dateNextAttempt;
+    }
+
+    /**
+     * Set the date from which the provider can be notified
+     * 
+     * @param dateNextAttempt
+     *            The date of the next attempt
+     */
+    public void setDateNextAttempt( Timestamp dateNextAttempt )
+    {
+        _dateNextAttempt = dateNextAttempt;
+    }
+}
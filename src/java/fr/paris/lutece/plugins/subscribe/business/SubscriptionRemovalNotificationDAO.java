@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class provides Data Access methods for pending subscription removal notifications
+ */
+public final class SubscriptionRemovalNotificationDAO implements ISubscriptionRemovalNotificationDAO
+{
+    // Constants
+    private static final String SQL_QUERY_INSERT = "INSERT INTO subscribe_removal_notification ( id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource, nb_attempts, date_next_attempt ) VALUES ( ?, ?, ?, ?, ?, 0, ? ) ";
+    private static final String SQL_QUERY_INSERT_BY_FILTER = "INSERT INTO subscribe_removal_notification ( id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource, nb_attempts, date_next_attempt ) SELECT id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource, 0, ? FROM subscribe_subscription ";
+    private static final String SQL_QUERY_SELECT_PENDING = "SELECT id_notification, id_subscription, id_user, subscription_provider, subscription_key, id_subscribed_resource, nb_attempts, date_next_attempt FROM subscribe_removal_notification WHERE date_next_attempt <= ? ORDER BY id_notification ASC LIMIT ? ";
+    private static final String SQL_QUERY_CLAIM = "UPDATE subscribe_removal_notification SET nb_attempts = ?, date_next_attempt = ? WHERE id_notification = ? AND nb_attempts = ? ";
+    private static final String SQL_QUERY_RESCHEDULE = "UPDATE subscribe_removal_notification SET date_next_attempt = ? WHERE id_notification = ? ";
+    private static final String SQL_QUERY_DELETE = "DELETE FROM subscribe_removal_notification WHERE id_notification = ? ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert( Collection<Subscription> collectionSubscriptions, Timestamp dateNextAttempt, Plugin plugin )
+    {
+        if ( collectionSubscriptions.isEmpty( ) )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT, plugin ) )
+        {
+            for ( Subscription subscription : collectionSubscriptions )
+            {
+                daoUtil.setInt( 1, subscription.getIdSubscription( ) );
+                daoUtil.setString( 2, subscription.getUserId( ) );
+                daoUtil.setString( 3, subscription.getSubscriptionProvider( ) );
+                daoUtil.setString( 4, subscription.getSubscriptionKey( ) );
+                daoUtil.setString( 5, subscription.getIdSubscribedResource( ) );
+                daoUtil.setTimestamp( 6, dateNextAttempt );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int insertByFilter( SubscriptionFilter filter, Timestamp dateNextAttempt, Plugin plugin )
+    {
+        List<Object> listValues = SubscriptionDAO.getFilterValues( filter );
+
+        if ( listValues.isEmpty( ) )
+        {
+            return 0;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_BY_FILTER + SubscriptionDAO.getFilterClause( filter ), plugin ) )
+        {
+            daoUtil.setTimestamp( 1, dateNextAttempt );
+            SubscriptionDAO.setFilterValues( daoUtil, listValues, 2 );
+
+            int nInserted = daoUtil.executeUpdate( );
+            daoUtil.free( );
+
+            return nInserted;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<SubscriptionRemovalNotification> selectPending( Timestamp date, int nLimit, Plugin plugin )
+    {
+        List<SubscriptionRemovalNotification> listNotifications = new ArrayList<>( );
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_PENDING, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, date );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                Subscription subscription = new Subscription( );
+                subscription.setIdSubscription( daoUtil.getInt( 2 ) );
+                subscription.setUserId( daoUtil.getString( 3 ) );
+                subscription.setSubscriptionProvider( daoUtil.getString( 4 ) );
+                subscription.setSubscriptionKey( daoUtil.getString( 5 ) );
+                subscription.setIdSubscribedResource( daoUtil.getString( 6 ) );
+
+                SubscriptionRemovalNotification notification = new SubscriptionRemovalNotification( );
+                notification.setIdNotification( daoUtil.getInt( 1 ) );
+                notification.setSubscription( subscription );
+                notification.setNbAttempts( daoUtil.getInt( 7 ) );
+                notification.setDateNextAttempt( daoUtil.getTimestamp( 8 ) );
+                listNotifications.add( notification );
+            }
+
+            daoUtil.free( );
+        }
+
+        return listNotifications;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean claim( SubscriptionRemovalNotification notification, Timestamp dateLeaseEnd, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_CLAIM, plugin ) )
+        {
+            daoUtil.setInt( 1, notification.getNbAttempts( ) + 1 );
+            daoUtil.setTimestamp( 2, dateLeaseEnd );
+            daoUtil.setInt( 3, notification.getIdNotification( ) );
+            daoUtil.setInt( 4, notification.getNbAttempts( ) );
+
+            // Another node claimed the notification first if no row was updated
+            boolean bClaimed = daoUtil.executeUpdate( ) == 1;
+            daoUtil.free( );
+
+            if ( bClaimed )
+            {
+                notification.setNbAttempts( notification.getNbAttempts( ) + 1 );
+                notification.setDateNextAttempt( dateLeaseEnd );
+            }
+
+            return bClaimed;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reschedule( int nIdNotification, Timestamp dateNextAttempt, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_RESCHEDULE, plugin ) )
+        {
+            daoUtil.setTimestamp( 1, dateNextAttempt );
+            daoUtil.setInt( 2, nIdNotification );
+
+            daoUtil.executeUpdate( );
+            daoUtil.free( );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteBatch( Collection<Integer> collectionIdNotifications, Plugin plugin )
+    {
+        if ( collectionIdNotifications.isEmpty( ) )
+        {
+            return;
+        }
+
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE, plugin ) )
+        {
+            for ( Integer nIdNotification : collectionIdNotifications )
+            {
+                daoUtil.setInt( 1, nIdNotification );
+                daoUtil.addBatch( );
+            }
+
+            daoUtil.executeBatch( );
+            daoUtil.free( );
+        }
+    }
+}
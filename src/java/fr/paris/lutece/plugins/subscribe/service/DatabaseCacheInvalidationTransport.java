@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.ISubscriptionCacheInvalidationDAO;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionCacheInvalidation;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Transport of subscription cache invalidations through a log table polled by every node.<br />
+ * Invalidations are read in the order of their ids. Since ids are allocated before the insert is committed, an invalidation may become visible after
+ * invalidations with greater ids : the missing ids are read again during <code>subscribe.cacheInvalidation.gapTimeout</code> milliseconds before being
+ * considered as rolled back. Invalidations older than <code>subscribe.cacheInvalidation.retention</code> seconds are purged.
+ */
+public class DatabaseCacheInvalidationTransport implements ISubscriptionCacheInvalidationTransport
+{
+    private static final String PROPERTY_POLL_INTERVAL = "subscribe.cacheInvalidation.pollInterval";
+    private static final String PROPERTY_BATCH_SIZE = "subscribe.cacheInvalidation.batchSize";
+    private static final String PROPERTY_GAP_TIMEOUT = "subscribe.cacheInvalidation.gapTimeout";
+    private static final String PROPERTY_RETENTION = "subscribe.cacheInvalidation.retention";
+    private static final long DEFAULT_POLL_INTERVAL = 1000L;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final long DEFAULT_GAP_TIMEOUT = 10000L;
+    private static final long DEFAULT_RETENTION = 3600L;
+    private static final int MAX_GAPS = 1000;
+    private static final String THREAD_NAME = "subscribe-cache-invalidation";
+
+    private ISubscriptionCacheInvalidationDAO _dao;
+    private final Map<Integer, Long> _mapGaps = new HashMap<>( );
+    private Consumer<SubscriptionCacheInvalidation> _consumer;
+    private ScheduledExecutorService _executor;
+    private int _nLastId;
+    private long _lNextPurge;
+
+    /**
+     * Set the DAO of the log of invalidations
+     * 
+     * @param dao
+     *            The DAO
+     */
+    public void setCacheInvalidationDAO( ISubscriptionCacheInvalidationDAO dao )
+    {
+        _dao = dao;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void start( Consumer<SubscriptionCacheInvalidation> consumer )
+    {
+        if ( _executor != null )
+        {
+            return;
+        }
+
+        // Invalidations broadcast before this node started are useless : its cache is empty
+        _consumer = consumer;
+        _nLastId = _dao.selectLastId( SubscribePlugin.getPlugin( ) );
+        _executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        long lPollInterval = AppPropertiesService.getPropertyLong( PROPERTY_POLL_INTERVAL, DEFAULT_POLL_INTERVAL );
+        _executor.scheduleWithFixedDelay( this::poll, lPollInterval, lPollInterval, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish( SubscriptionCacheInvalidation invalidation )
+    {
+        _dao.insert( invalidation, SubscribePlugin.getPlugin( ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void stop( )
+    {
+        if ( _executor != null )
+        {
+            _executor.shutdownNow( );
+            _executor = null;
+        }
+    }
+
+    /**
+     * Read the new invalidations of the log and give them to the consumer
+     */
+    private void poll( )
+    {
+        try
+        {
+            Plugin plugin = SubscribePlugin.getPlugin( );
+            long lNow = System.currentTimeMillis( );
+            long lGapTimeout = AppPropertiesService.getPropertyLong( PROPERTY_GAP_TIMEOUT, DEFAULT_GAP_TIMEOUT );
+            _mapGaps.values( ).removeIf( lFirstSeen -> lFirstSeen < lNow - lGapTimeout );
+
+            int nFromId = _mapGaps.isEmpty( ) ? _nLastId : Math.min( _nLastId, Collections.min( _mapGaps.keySet( ) ) - 1 );
+            List<SubscriptionCacheInvalidation> listInvalidations = _dao.selectAfter( nFromId,
+                    AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE ), plugin );
+
+            for ( SubscriptionCacheInvalidation invalidation : listInvalidations )
+            {
+                int nId = invalidation.getIdInvalidation( );
+
+                if ( nId > _nLastId )
+                {
+                    for ( int nMissingId = _nLastId + 1; nMissingId < nId && _mapGaps.size( ) < MAX_GAPS; nMissingId++ )
+                    {
+                        _mapGaps.put( nMissingId, lNow );
+                    }
+                    _nLastId = nId;
+                }
+                else if ( _mapGaps.remove( nId ) == null )
+                {
+                    // Already received
+                    continue;
+                }
+
+                _consumer.accept( invalidation );
+            }
+
+            if ( lNow >= _lNextPurge )
+            {
+                long lRetention = TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_RETENTION, DEFAULT_RETENTION ) );
+                _dao.deleteOlderThan( new Timestamp( lNow - lRetention ), plugin );
+                _lNextPurge = lNow + lRetention / 10;
+            }
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Unable to read the subscription cache invalidations", e );
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+
+import java.util.List;
+
+/**
+ * Interface of subscription providers whose subscribers can be notified in background by {@link SubscriptionFanOutService fan-outs}. Fan-outs and digests
+ * of providers that do not implement it are rejected before anything is stored.
+ */
+public interface ISubscriptionFanOutProvider extends ISubscriptionProviderService
+{
+    /**
+     * Notify the subscribers of a resource, for a fan-out started with {@link SubscriptionFanOutService#fanOut(String, String, String, String)}. The
+     * subscribers are given by chunks of subscriptions, possibly from several threads or nodes at once. A chunk may be given again if a previous call failed or
+     * was interrupted.
+     * 
+     * @param listSubscriptions
+     *            The subscriptions to notify, by ascending id. Every subscription belongs to this provider
+     * @param strPayload
+     *            The payload given when the fan-out was started
+     */
+    void notifySubscribers( List<Subscription> listSubscriptions, String strPayload );
+
+    /**
+     * Merge the payloads of the updates of a resource published during a digest window into the payload of a single fan-out. See
+     * {@link SubscriptionDigestService#publish(String, String, String, String)}.<br />
+     * The default implementation joins the distinct payloads with line breaks, in the order they were published.
+     * 
+     * @param listPayloads
+     *            The distinct payloads of the window, oldest first
+     * @return The payload given to {@link #notifySubscribers(List, String)}
+     */
+    default String getDigestPayload( List<String> listPayloads )
+    {
+        return String.join( "\n", listPayloads );
+    }
+}
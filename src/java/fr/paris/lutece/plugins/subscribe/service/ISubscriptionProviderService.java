@@ -34,8 +34,12 @@
 package fr.paris.lutece.plugins.subscribe.service;
 
 import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionDTO;
 import fr.paris.lutece.portal.service.security.LuteceUser;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -95,10 +99,74 @@ public interface ISubscriptionProviderService
     String getUrlModifySubscription( LuteceUser user, String strSubscriptionKey, String strIdSubscribedResource );
 
     /**
-     * Notify the provider that a subscription associated with it has been removed
+     * Notify the provider that a subscription associated with it has been removed. This method is called by a daemon once the removal is committed, and may be
+     * called again for the same subscription if a previous call failed or was interrupted.
      * 
      * @param subscription
      *            The removed subscription
      */
     void notifySubscriptionRemoval( Subscription subscription );
+
+    /**
+     * Notify the provider that several subscriptions associated with it have been removed. This method is called by a daemon once the removals are committed,
+     * and may be called again for the same subscriptions if a previous call failed or was interrupted.<br />
+     * The default implementation calls {@link #notifySubscriptionRemoval(Subscription)} for each subscription. Providers that can process several removals at
+     * once should override it.
+     * 
+     * @param collectionSubscriptions
+     *            The removed subscriptions. Every subscription belongs to this provider
+     */
+    default void notifySubscriptionsRemoval( Collection<Subscription> collectionSubscriptions )
+    {
+        for ( Subscription subscription : collectionSubscriptions )
+        {
+            notifySubscriptionRemoval( subscription );
+        }
+    }
+
+    /**
+     * Describe several subscriptions of a user at once. The DTOs contain the description, the removability and the URL to modify of each subscription.<br />
+     * The default implementation calls {@link #isSubscriptionRemovable(LuteceUser, String, String)},
+     * {@link #getUrlModifySubscription(LuteceUser, String, String)} and
+     * {@link #getSubscriptionHtmlDescriptionBis(LuteceUser, String, String, Locale, String)} for each subscription. Providers that can load several resources
+     * with a single query should override it, and override {@link #supportsBatchDescription()} to return true : the subscriptions of the other providers are
+     * described one by one, in parallel.
+     * 
+     * @param user
+     *            The user
+     * @param listSubscriptions
+     *            The subscriptions to describe. Every subscription belongs to this provider
+     * @param locale
+     *            The locale to display the generated HTML in
+     * @return The DTOs of the subscriptions. Subscriptions that can not be described may be missing from the list
+     */
+    default List<SubscriptionDTO> getSubscriptionDTOList( LuteceUser user, List<Subscription> listSubscriptions, Locale locale )
+    {
+        List<SubscriptionDTO> listSubscriptionDto = new ArrayList<>( listSubscriptions.size( ) );
+
+        for ( Subscription subscription : listSubscriptions )
+        {
+            SubscriptionDTO subscriptionDTO = new SubscriptionDTO( );
+            subscriptionDTO.setIdSubscription( subscription.getIdSubscription( ) );
+            subscriptionDTO.setRemovable( isSubscriptionRemovable( user, subscription.getSubscriptionKey( ), subscription.getIdSubscribedResource( ) ) );
+            subscriptionDTO.setUrlModify( getUrlModifySubscription( user, subscription.getSubscriptionKey( ), subscription.getIdSubscribedResource( ) ) );
+            subscriptionDTO.setHtmlSubscription( getSubscriptionHtmlDescriptionBis( user, subscription.getSubscriptionKey( ),
+                    subscription.getIdSubscribedResource( ), locale, subscription.getIdSubscribedResource( ) ) );
+            listSubscriptionDto.add( subscriptionDTO );
+        }
+
+        return listSubscriptionDto;
+    }
+
+    /**
+     * Check whether the provider describes several subscriptions at once with {@link #getSubscriptionDTOList(LuteceUser, List, Locale)}.<br />
+     * The default implementation returns false, so that the subscriptions of the provider are described one by one, in parallel.
+     * 
+     * @return True if all the subscriptions of a user are given to a single call of {@link #getSubscriptionDTOList(LuteceUser, List, Locale)}, false if
+     *         each call receives a single subscription
+     */
+    default boolean supportsBatchDescription( )
+    {
+        return false;
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies, with fixed buckets from 0.1 ms to 10 s. Percentiles are approximated by the upper bound of their bucket.
+ */
+public final class LatencyHistogram
+{
+    private static final long [ ] BUCKET_BOUNDS_MICROS = {
+            100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L, 25000L, 50000L, 100000L, 250000L, 500000L, 1000000L, 2500000L, 5000000L, 10000000L, Long.MAX_VALUE
+    };
+
+    private final LongAdder [ ] _buckets = new LongAdder [ BUCKET_BOUNDS_MICROS.length];
+    private final LongAdder _count = new LongAdder( );
+    private final LongAdder _totalMicros = new LongAdder( );
+    private final LongAccumulator _maxMicros = new LongAccumulator( Math::max, 0L );
+
+    /**
+     * Constructor
+     */
+    public LatencyHistogram( )
+    {
+        for ( int i = 0; i < _buckets.length; i++ )
+        {
+            _buckets [i] = new LongAdder( );
+        }
+    }
+
+    /**
+     * Record a latency
+     * 
+     * @param lNanos
+     *            The latency in nanoseconds
+     */
+    public void record( long lNanos )
+    {
+        long lMicros = TimeUnit.NANOSECONDS.toMicros( lNanos );
+        int nBucket = 0;
+        while ( lMicros > BUCKET_BOUNDS_MICROS [nBucket] )
+        {
+            nBucket++;
+        }
+
+        _buckets [nBucket].increment( );
+        _count.increment( );
+        _totalMicros.add( lMicros );
+        _maxMicros.accumulate( lMicros );
+    }
+
+    /**
+     * Get the number of recorded latencies
+     * 
+     * @return The number of recorded latencies
+     */
+    public long getCount( )
+    {
+        return _count.sum( );
+    }
+
+    /**
+     * Get the mean latency
+     * 
+     * @return The mean latency in milliseconds
+     */
+    public double getMeanMillis( )
+    {
+        long lCount = _count.sum( );
+
+        return ( lCount == 0 ) ? 0d : _totalMicros.sum( ) / 1000d / lCount;
+    }
+
+    /**
+     * Get the maximum latency
+     * 
+     * @return The maximum latency in milliseconds
+     */
+    public double getMaxMillis( )
+    {
+        return _maxMicros.get( ) / 1000d;
+    }
+
+    /**
+     * Get an approximation of a percentile
+     * 
+     * @param dPercentile
+     *            The percentile, between 0 and 100
+     * @return The upper bound of the bucket of the percentile in milliseconds, or the maximum latency for the last bucket
+     */
+    public double getPercentileMillis( double dPercentile )
+    {
+        long lCount = _count.sum( );
+        if ( lCount == 0 )
+        {
+            return 0d;
+        }
+
+        long lRank = (long) Math.ceil( lCount * dPercentile / 100d );
+        long lCumulated = 0;
+        for ( int i = 0; i < _buckets.length - 1; i++ )
+        {
+            lCumulated += _buckets [i].sum( );
+            if ( lCumulated >= lRank )
+            {
+                return BUCKET_BOUNDS_MICROS [i] / 1000d;
+            }
+        }
+
+        return getMaxMillis( );
+    }
+}
@@ -33,6 +33,7 @@
  */
 package fr.paris.lutece.plugins.subscribe.service;
 
+import fr.paris.lutece.portal.service.init.ShutdownServiceManager;
 import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.plugin.PluginDefaultImplementation;
 import fr.paris.lutece.portal.service.plugin.PluginService;
@@ -46,6 +47,34 @@ public class SubscribePlugin extends PluginDefaultImplementation
 
     private static volatile Plugin _plugin;
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init( )
+    {
+        // Registers the caches of subscriptions and subscribers with the cache service
+        SubscriptionCacheService.getInstance( );
+        SubscriberCacheService.getInstance( );
+
+        SubscriptionProviderRegistry providerRegistry = SubscriptionProviderRegistry.getInstance( );
+        providerRegistry.refresh( );
+        PluginService.registerPluginEventListener( providerRegistry );
+
+        SubscriptionMetrics.getInstance( ).register( );
+
+        // Invalidations are received before the Bloom filter is built, so that it sees the subscriptions created by other nodes meanwhile
+        SubscriptionCacheInvalidationService.getInstance( ).init( );
+        SubscriptionIndexService.getInstance( ).init( );
+        SubscriptionBloomFilter.getInstance( ).init( );
+
+        SubscriptionEventBus eventBus = SubscriptionEventBus.getInstance( );
+        eventBus.refresh( );
+        PluginService.registerPluginEventListener( eventBus );
+
+        ShutdownServiceManager.registerShutdownService( new SubscribeShutdownService( ) );
+    }
+
     /**
      * Get the subscribe plugin
      * 
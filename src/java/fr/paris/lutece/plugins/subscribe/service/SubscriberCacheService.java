@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+
+/**
+ * Short lived cache of the Lutece users resolved from subscriptions. Its size and time to live are configured in subscribe.properties.
+ */
+public final class SubscriberCacheService extends AbstractCacheableService
+{
+    private static final String CACHE_SERVICE_NAME = "SubscriberCacheService";
+
+    private static SubscriberCacheService _instance = new SubscriberCacheService( );
+
+    /**
+     * Private constructor
+     */
+    private SubscriberCacheService( )
+    {
+        initCache( );
+    }
+
+    /**
+     * Get the instance of the cache service
+     * 
+     * @return The instance of the cache service
+     */
+    public static SubscriberCacheService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return CACHE_SERVICE_NAME;
+    }
+
+    /**
+     * Get a user from the cache
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @return The user, or null if it is not in the cache
+     */
+    public LuteceUser getUser( String strUserId )
+    {
+        LuteceUser user = (LuteceUser) getFromCache( strUserId );
+
+        if ( isCacheEnable( ) )
+        {
+            SubscriptionMetrics.getInstance( ).increment( ( user != null ) ? SubscriptionMetrics.COUNTER_SUBSCRIBER_CACHE_HIT
+                    : SubscriptionMetrics.COUNTER_SUBSCRIBER_CACHE_MISS );
+        }
+
+        return user;
+    }
+
+    /**
+     * Put a user in the cache
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @param user
+     *            The user
+     */
+    public void putUser( String strUserId, LuteceUser user )
+    {
+        putInCache( strUserId, user );
+    }
+
+    /**
+     * Remove a user from the cache
+     * 
+     * @param strUserId
+     *            The id of the user
+     */
+    public void removeUser( String strUserId )
+    {
+        removeKey( strUserId );
+    }
+}
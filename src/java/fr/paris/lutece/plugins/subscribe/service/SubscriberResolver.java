@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.security.LuteceUserService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the Lutece users of subscriptions. Users are looked up in the subscriber cache first. Cache misses are split into batches that are resolved in
+ * parallel by a bounded pool of threads.
+ */
+public final class SubscriberResolver
+{
+    private static final String PROPERTY_BATCH_SIZE = "subscribe.subscriberResolution.batchSize";
+    private static final String PROPERTY_THREADS = "subscribe.subscriberResolution.threads";
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_THREADS = 4;
+    private static final String THREAD_NAME_PREFIX = "subscribe-subscriber-resolver-";
+
+    private static SubscriberResolver _instance = new SubscriberResolver( );
+
+    private final int _nBatchSize;
+    private final ExecutorService _executor;
+
+    /**
+     * Private constructor
+     */
+    private SubscriberResolver( )
+    {
+        _nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE ) );
+
+        AtomicInteger nThreadCount = new AtomicInteger( );
+        _executor = Executors.newFixedThreadPool( Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_THREADS, DEFAULT_THREADS ) ), runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME_PREFIX + nThreadCount.incrementAndGet( ) );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    /**
+     * Get the instance of the resolver
+     * 
+     * @return The instance of the resolver
+     */
+    public static SubscriberResolver getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Stop the threads of the resolver
+     */
+    public void shutdown( )
+    {
+        _executor.shutdownNow( );
+    }
+
+    /**
+     * Resolve a single user
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @return The user, or null if no user has the given id
+     */
+    public LuteceUser resolve( String strUserId )
+    {
+        SubscriberCacheService cacheService = SubscriberCacheService.getInstance( );
+        LuteceUser user = cacheService.getUser( strUserId );
+
+        if ( user == null )
+        {
+            user = LuteceUserService.getLuteceUserFromName( strUserId );
+
+            if ( user != null )
+            {
+                cacheService.putUser( strUserId, user );
+            }
+        }
+
+        return user;
+    }
+
+    /**
+     * Resolve several users. Ids must be distinct.
+     * 
+     * @param collectionUserIds
+     *            The ids of the users
+     * @return The users found, by id. Ids of users that can not be found are not in the map.
+     * @throws AppException
+     *             if the current thread is interrupted while the users are resolved
+     */
+    public Map<String, LuteceUser> resolve( Collection<String> collectionUserIds )
+    {
+        SubscriberCacheService cacheService = SubscriberCacheService.getInstance( );
+        Map<String, LuteceUser> mapUsers = new HashMap<>( collectionUserIds.size( ) );
+        List<String> listMissingUserIds = new ArrayList<>( );
+
+        for ( String strUserId : collectionUserIds )
+        {
+            LuteceUser user = cacheService.getUser( strUserId );
+
+            if ( user != null )
+            {
+                mapUsers.put( strUserId, user );
+            }
+            else
+            {
+                listMissingUserIds.add( strUserId );
+            }
+        }
+
+        if ( listMissingUserIds.size( ) <= _nBatchSize )
+        {
+            mapUsers.putAll( resolveBatch( listMissingUserIds ) );
+            return mapUsers;
+        }
+
+        List<Future<Map<String, LuteceUser>>> listBatches = new ArrayList<>( );
+        for ( int nStart = 0; nStart < listMissingUserIds.size( ); nStart += _nBatchSize )
+        {
+            List<String> listBatch = listMissingUserIds.subList( nStart, Math.min( nStart + _nBatchSize, listMissingUserIds.size( ) ) );
+            listBatches.add( _executor.submit( ( ) -> resolveBatch( listBatch ) ) );
+        }
+
+        for ( Future<Map<String, LuteceUser>> batch : listBatches )
+        {
+            try
+            {
+                mapUsers.putAll( batch.get( ) );
+            }
+            catch( ExecutionException e )
+            {
+                AppLogService.error( "Unable to resolve a batch of subscribers", e );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                listBatches.forEach( remainingBatch -> remainingBatch.cancel( true ) );
+                throw new AppException( "Interrupted while resolving subscribers", e );
+            }
+        }
+
+        return mapUsers;
+    }
+
+    /**
+     * Resolve a batch of users that are not in the cache, and put them in the cache
+     * 
+     * @param listUserIds
+     *            The ids of the users
+     * @return The users found, by id
+     */
+    private static Map<String, LuteceUser> resolveBatch( List<String> listUserIds )
+    {
+        SubscriberCacheService cacheService = SubscriberCacheService.getInstance( );
+        Map<String, LuteceUser> mapUsers = new HashMap<>( listUserIds.size( ) );
+
+        for ( String strUserId : listUserIds )
+        {
+            LuteceUser user = LuteceUserService.getLuteceUserFromName( strUserId );
+
+            if ( user != null )
+            {
+                cacheService.putUser( strUserId, user );
+                mapUsers.put( strUserId, user );
+            }
+        }
+
+        return mapUsers;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Optional Bloom filter of subscriptions, used to answer "is this user subscribed to this resource" without querying the database when the answer is no.<br />
+ * The filter is built in background when the plugin starts, and subscriptions created through the subscription service of this node are added to it. Removed
+ * subscriptions can not be taken out of a Bloom filter : they only make the filter answer "maybe", which is checked in the database. The filter is rebuilt
+ * periodically to drop them. Until the filter is built, {@link #isReady()} returns false and callers must query the database.<br />
+ * Subscriptions created by other nodes are added from the cache invalidations they broadcast, see {@link SubscriptionCacheInvalidationService}. A node may
+ * therefore miss a subscription created by another node until it receives its invalidation, as its caches do. On deployments with several nodes, the filter
+ * must only be enabled together with the cache invalidations : without them, it would answer "no" for every subscription created by the other nodes.<br />
+ * Values are hashed in lower case, as the database compares them under a case insensitive collation : a check with "User1" finds a subscription stored
+ * for "user1". Other equivalences of the collation, such as accents or trailing spaces, are not folded : the filter must not be enabled if the subscriptions
+ * are queried with values that only match their stored values under such equivalences.
+ */
+public final class SubscriptionBloomFilter
+{
+    private static final String PROPERTY_ENABLED = "subscribe.bloomFilter.enabled";
+    private static final String PROPERTY_EXPECTED_SUBSCRIPTIONS = "subscribe.bloomFilter.expectedSubscriptions";
+    private static final String PROPERTY_FALSE_POSITIVE_RATE = "subscribe.bloomFilter.falsePositiveRate";
+    private static final String PROPERTY_REBUILD_INTERVAL = "subscribe.bloomFilter.rebuildInterval";
+    private static final int DEFAULT_EXPECTED_SUBSCRIPTIONS = 1000000;
+    private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    private static final long DEFAULT_REBUILD_INTERVAL = 86400L;
+    private static final String THREAD_NAME = "subscribe-bloom-filter";
+    private static final char SEPARATOR = '\u0000';
+
+    private static SubscriptionBloomFilter _instance = new SubscriptionBloomFilter( );
+
+    private final boolean _bEnabled;
+    private final Consumer<Consumer<Subscription>> _subscriptionSource;
+    private volatile Bits _bits;
+    private volatile Bits _bitsBuilding;
+    private volatile int _nLastCount;
+    private ScheduledExecutorService _executor;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionBloomFilter( )
+    {
+        this( AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false ),
+                visitor -> SubscriptionService.getInstance( ).forEachSubscription( new SubscriptionFilter( ), visitor ) );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param bEnabled
+     *            True if the filter is enabled, false otherwise
+     * @param subscriptionSource
+     *            The source of the subscriptions read when the filter is built. It gives every subscription to the visitor it receives
+     */
+    SubscriptionBloomFilter( boolean bEnabled, Consumer<Consumer<Subscription>> subscriptionSource )
+    {
+        _bEnabled = bEnabled;
+        _subscriptionSource = subscriptionSource;
+    }
+
+    /**
+     * Get the instance of the Bloom filter
+     * 
+     * @return The instance of the Bloom filter
+     */
+    public static SubscriptionBloomFilter getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Check if the filter is built and can answer queries
+     * 
+     * @return True if the filter can answer queries, false otherwise
+     */
+    public boolean isReady( )
+    {
+        return _bits != null;
+    }
+
+    /**
+     * Build the filter in background, then rebuild it periodically, if it is enabled
+     */
+    public synchronized void init( )
+    {
+        if ( !_bEnabled || _executor != null )
+        {
+            return;
+        }
+
+        _executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        long lInterval = AppPropertiesService.getPropertyLong( PROPERTY_REBUILD_INTERVAL, DEFAULT_REBUILD_INTERVAL );
+
+        if ( lInterval > 0 )
+        {
+            _executor.scheduleWithFixedDelay( this::build, 0L, lInterval, TimeUnit.SECONDS );
+        }
+        else
+        {
+            _executor.execute( this::build );
+        }
+    }
+
+    /**
+     * Stop building the filter. The filter already built keeps answering queries.
+     */
+    public synchronized void shutdown( )
+    {
+        if ( _executor != null )
+        {
+            _executor.shutdownNow( );
+            _executor = null;
+        }
+    }
+
+    /**
+     * Build a new filter from every subscription, then replace the current filter with it
+     */
+    void build( )
+    {
+        long lStart = System.currentTimeMillis( );
+        int nExpected = Math.max( AppPropertiesService.getPropertyInt( PROPERTY_EXPECTED_SUBSCRIPTIONS, DEFAULT_EXPECTED_SUBSCRIPTIONS ), 2 * _nLastCount );
+        double dFalsePositiveRate = Double.parseDouble( AppPropertiesService.getProperty( PROPERTY_FALSE_POSITIVE_RATE,
+                Double.toString( DEFAULT_FALSE_POSITIVE_RATE ) ) );
+        Bits bits = new Bits( nExpected, dFalsePositiveRate );
+
+        // Subscriptions created while the table is read are added to both filters
+        _bitsBuilding = bits;
+        try
+        {
+            int [ ] nCount = new int [ 1];
+            _subscriptionSource.accept( subscription -> {
+                bits.add( subscription.getUserId( ), subscription.getSubscriptionProvider( ), subscription.getSubscriptionKey( ),
+                        subscription.getIdSubscribedResource( ) );
+                nCount [0]++;
+            } );
+
+            _bits = bits;
+            _nLastCount = nCount [0];
+            AppLogService.info( "Subscription Bloom filter built : " + nCount [0] + " subscriptions, " + bits.size( ) + " bits in "
+                    + ( System.currentTimeMillis( ) - lStart ) + " ms" );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Unable to build the subscription Bloom filter", e );
+        }
+        finally
+        {
+            _bitsBuilding = null;
+        }
+    }
+
+    /**
+     * Add a subscription to the filter
+     * 
+     * @param subscription
+     *            The created subscription
+     */
+    public void add( Subscription subscription )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        Bits bitsBuilding = _bitsBuilding;
+        if ( bitsBuilding != null )
+        {
+            bitsBuilding.add( subscription.getUserId( ), subscription.getSubscriptionProvider( ), subscription.getSubscriptionKey( ),
+                    subscription.getIdSubscribedResource( ) );
+        }
+
+        Bits bits = _bits;
+        if ( bits != null )
+        {
+            bits.add( subscription.getUserId( ), subscription.getSubscriptionProvider( ), subscription.getSubscriptionKey( ),
+                    subscription.getIdSubscribedResource( ) );
+        }
+    }
+
+    /**
+     * Check if a user may be subscribed to a resource. The answer is always true until the filter is {@link #isReady() ready}.
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return False if the user is not subscribed to the resource, true if the user may be subscribed to it
+     */
+    public boolean mightContain( String strUserId, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        Bits bits = _bits;
+
+        return bits == null || bits.mightContain( strUserId, strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource );
+    }
+
+    /**
+     * Bit array of a Bloom filter. Bits are set without lock.
+     */
+    private static final class Bits
+    {
+        private final AtomicLongArray _words;
+        private final long _lNbBits;
+        private final int _nNbHashes;
+
+        /**
+         * Constructor
+         * 
+         * @param nExpected
+         *            The expected number of subscriptions
+         * @param dFalsePositiveRate
+         *            The expected rate of false positives
+         */
+        Bits( int nExpected, double dFalsePositiveRate )
+        {
+            int nWords = (int) Math.min( Integer.MAX_VALUE, Math.max( 1L, (long) Math.ceil(
+                    -nExpected * Math.log( dFalsePositiveRate ) / ( Math.log( 2 ) * Math.log( 2 ) ) / Long.SIZE ) ) );
+            _words = new AtomicLongArray( nWords );
+            _lNbBits = (long) nWords * Long.SIZE;
+            _nNbHashes = Math.max( 1, (int) Math.round( (double) _lNbBits / Math.max( 1, nExpected ) * Math.log( 2 ) ) );
+        }
+
+        /**
+         * Get the number of bits of the filter
+         * 
+         * @return The number of bits
+         */
+        long size( )
+        {
+            return _lNbBits;
+        }
+
+        /**
+         * Add a subscription
+         * 
+         * @param strUserId
+         *            The id of the user
+         * @param strSubscriptionProvider
+         *            The subscription provider
+         * @param strSubscriptionKey
+         *            The subscription key
+         * @param strIdSubscribedResource
+         *            The id of the subscribed resource
+         */
+        void add( String strUserId, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+        {
+            long lHash = hash( strUserId, strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource );
+
+            for ( int i = 0; i < _nNbHashes; i++ )
+            {
+                long lBit = getBit( lHash, i );
+                int nWord = (int) ( lBit >>> 6 );
+                long lMask = 1L << lBit;
+                long lWord = _words.get( nWord );
+
+                while ( ( lWord & lMask ) == 0 && !_words.compareAndSet( nWord, lWord, lWord | lMask ) )
+                {
+                    lWord = _words.get( nWord );
+                }
+            }
+        }
+
+        /**
+         * Check if a subscription may have been added
+         * 
+         * @param strUserId
+         *            The id of the user
+         * @param strSubscriptionProvider
+         *            The subscription provider
+         * @param strSubscriptionKey
+         *            The subscription key
+         * @param strIdSubscribedResource
+         *            The id of the subscribed resource
+         * @return False if the subscription was not added, true if it may have been added
+         */
+        boolean mightContain( String strUserId, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+        {
+            long lHash = hash( strUserId, strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource );
+
+            for ( int i = 0; i < _nNbHashes; i++ )
+            {
+                long lBit = getBit( lHash, i );
+
+                if ( ( _words.get( (int) ( lBit >>> 6 ) ) & ( 1L << lBit ) ) == 0 )
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Get the position of the nth bit of a subscription, by double hashing
+         * 
+         * @param lHash
+         *            The hash of the subscription
+         * @param i
+         *            The index of the bit
+         * @return The position of the bit
+         */
+        private long getBit( long lHash, int i )
+        {
+            long lCombined = ( lHash >>> 32 ) + i * ( lHash & 0xFFFFFFFFL );
+
+            return ( lCombined & Long.MAX_VALUE ) % _lNbBits;
+        }
+
+        /**
+         * Hash a subscription with the 64 bits FNV-1a function, followed by the finalizer of MurmurHash3
+         * 
+         * @param strUserId
+         *            The id of the user
+         * @param strSubscriptionProvider
+         *            The subscription provider
+         * @param strSubscriptionKey
+         *            The subscription key
+         * @param strIdSubscribedResource
+         *            The id of the subscribed resource
+         * @return The hash
+         */
+        private static long hash( String strUserId, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+        {
+            long lHash = 0xcbf29ce484222325L;
+            lHash = hash( lHash, strUserId );
+            lHash = hash( lHash, strSubscriptionProvider );
+            lHash = hash( lHash, strSubscriptionKey );
+            lHash = hash( lHash, strIdSubscribedResource );
+
+            lHash ^= lHash >>> 33;
+            lHash *= 0xff51afd7ed558ccdL;
+            lHash ^= lHash >>> 33;
+            lHash *= 0xc4ceb9fe1a85ec53L;
+            lHash ^= lHash >>> 33;
+
+            return lHash;
+        }
+
+        /**
+         * Continue a FNV-1a hash with a string in lower case and a separator
+         * 
+         * @param lHash
+         *            The current hash
+         * @param strValue
+         *            The string, may be null
+         * @return The new hash
+         */
+        private static long hash( long lHash, String strValue )
+        {
+            long lResult = lHash;
+
+            if ( strValue != null )
+            {
+                for ( int i = 0; i < strValue.length( ); i++ )
+                {
+                    lResult ^= Character.toLowerCase( strValue.charAt( i ) );
+                    lResult *= 0x100000001b3L;
+                }
+            }
+            lResult ^= SEPARATOR;
+            lResult *= 0x100000001b3L;
+
+            return lResult;
+        }
+    }
+}
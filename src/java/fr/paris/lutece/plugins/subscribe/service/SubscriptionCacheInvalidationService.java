@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionCacheInvalidation;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * Service keeping the subscription caches of the nodes of a cluster coherent. Each invalidation of the cache of this node is broadcast to the other nodes
+ * through a {@link ISubscriptionCacheInvalidationTransport}, and the invalidations received from the other nodes are applied to the cache of this node.<br />
+ * Invalidations are broadcast after the write is committed, so another node may serve the previous value until it receives the invalidation. A received
+ * invalidation is applied to every structure of this node that depends on the subscriptions : the caches of subscriptions and subscribers, the
+ * {@link SubscriptionIndexService index}, the {@link SubscriptionBloomFilter Bloom filter} and the stickiness of the {@link SubscriptionReadRouter read
+ * router}.<br />
+ * An invalidation that can not be broadcast is lost for the other nodes. It is counted, and the caches of this node are reset, since the failure may come
+ * from a database that is not reachable anymore.
+ */
+public final class SubscriptionCacheInvalidationService
+{
+    private static final String PROPERTY_ENABLED = "subscribe.cacheInvalidation.enabled";
+    private static final String PROPERTY_TRANSPORT = "subscribe.cacheInvalidation.transport";
+    private static final String DEFAULT_TRANSPORT = "subscribe.databaseCacheInvalidationTransport";
+
+    private static SubscriptionCacheInvalidationService _instance = new SubscriptionCacheInvalidationService( );
+
+    private final String _strNodeId = UUID.randomUUID( ).toString( );
+    private volatile ISubscriptionCacheInvalidationTransport _transport;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionCacheInvalidationService( )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return The instance of the service
+     */
+    public static SubscriptionCacheInvalidationService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Start receiving the invalidations of the other nodes, if the invalidations are enabled
+     */
+    public synchronized void init( )
+    {
+        if ( !AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false ) || _transport != null )
+        {
+            return;
+        }
+
+        String strTransport = AppPropertiesService.getProperty( PROPERTY_TRANSPORT, DEFAULT_TRANSPORT );
+        ISubscriptionCacheInvalidationTransport transport = SpringContextService.getBean( strTransport );
+        transport.start( this::apply );
+        _transport = transport;
+        AppLogService.info( "Subscription cache invalidations of node " + _strNodeId + " use the transport " + strTransport );
+    }
+
+    /**
+     * Stop receiving the invalidations of the other nodes
+     */
+    public synchronized void shutdown( )
+    {
+        ISubscriptionCacheInvalidationTransport transport = _transport;
+
+        if ( transport != null )
+        {
+            _transport = null;
+            transport.stop( );
+        }
+    }
+
+    /**
+     * Check if subscriptions are cached on this node or may be cached on other nodes
+     * 
+     * @return True if the caches must be invalidated when a subscription is written
+     */
+    public boolean isEnabled( )
+    {
+        return SubscriptionCacheService.getInstance( ).isCacheEnable( ) || _transport != null;
+    }
+
+    /**
+     * Remove every entry that may contain a given subscription from the cache of every node
+     * 
+     * @param subscription
+     *            The created, modified or removed subscription
+     */
+    public void invalidate( Subscription subscription )
+    {
+        SubscriptionCacheService.getInstance( ).invalidate( subscription );
+        broadcast( subscription );
+    }
+
+    /**
+     * Reset the cache of every node
+     */
+    public void resetCache( )
+    {
+        SubscriptionCacheService.getInstance( ).resetCache( );
+        broadcast( null );
+    }
+
+    /**
+     * Broadcast an invalidation to the other nodes. A failure is logged without failing the write, which is already done.
+     * 
+     * @param subscription
+     *            The subscription to invalidate, or null to reset the cache
+     */
+    private void broadcast( Subscription subscription )
+    {
+        ISubscriptionCacheInvalidationTransport transport = _transport;
+
+        if ( transport == null )
+        {
+            return;
+        }
+
+        SubscriptionCacheInvalidation invalidation = new SubscriptionCacheInvalidation( );
+        invalidation.setNodeId( _strNodeId );
+        invalidation.setSubscription( subscription );
+        invalidation.setDateInvalidation( new Timestamp( System.currentTimeMillis( ) ) );
+
+        try
+        {
+            transport.publish( invalidation );
+        }
+        catch( RuntimeException e )
+        {
+            SubscriptionMetrics.getInstance( ).increment( SubscriptionMetrics.COUNTER_CACHE_INVALIDATION_FAILED );
+            AppLogService.error( "Unable to broadcast a subscription cache invalidation, the caches of this node are reset", e );
+            SubscriptionCacheService.getInstance( ).resetCache( );
+            SubscriberCacheService.getInstance( ).resetCache( );
+        }
+    }
+
+    /**
+     * Apply an invalidation received from a node to the caches, index, Bloom filter and read router of this node
+     * 
+     * @param invalidation
+     *            The invalidation
+     */
+    private void apply( SubscriptionCacheInvalidation invalidation )
+    {
+        if ( _strNodeId.equals( invalidation.getNodeId( ) ) )
+        {
+            // Already applied when it was broadcast
+            return;
+        }
+
+        Subscription subscription = invalidation.getSubscription( );
+
+        if ( subscription != null )
+        {
+            SubscriptionReadRouter.getInstance( ).markWritten( subscription );
+            SubscriptionCacheService.getInstance( ).invalidate( subscription );
+            SubscriberCacheService.getInstance( ).removeUser( subscription.getUserId( ) );
+
+            // The invalidation does not tell whether the subscription was created, modified or removed : the index reads it again
+            SubscriptionIndexService.getInstance( ).refresh( subscription.getIdSubscription( ) );
+
+            // The subscription may have been created by the other node. Adding a subscription that was removed or modified only makes the filter answer "maybe"
+            SubscriptionBloomFilter.getInstance( ).add( subscription );
+        }
+        else
+        {
+            SubscriptionReadRouter.getInstance( ).markAllWritten( );
+            SubscriptionCacheService.getInstance( ).resetCache( );
+            SubscriberCacheService.getInstance( ).resetCache( );
+            SubscriptionIndexService.getInstance( ).reload( );
+        }
+    }
+}
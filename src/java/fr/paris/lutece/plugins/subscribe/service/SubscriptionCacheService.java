@@ -0,0 +1,486 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Cache of subscriptions. Subscriptions are cached by id, by user and by subscribed resource (provider, subscription key and resource id). The numbers of
+ * subscriptions of a user and of a subscribed resource are cached as well.<br />
+ * Entries are loaded from the database outside of any lock, so a write may invalidate an entry while a reader is loading its previous value. To prevent the
+ * reader from caching this value, readers take the generation of the entry before loading it and give it back when putting the value : the value is not
+ * kept if the entry was invalidated in the meantime. Cached subscriptions are copies, so callers can not modify them.
+ */
+public final class SubscriptionCacheService extends AbstractCacheableService
+{
+    private static final String CACHE_SERVICE_NAME = "SubscriptionCacheService";
+
+    private static final String KEY_PREFIX_ID = "[id:";
+    private static final String KEY_PREFIX_USER = "[user:";
+    private static final String KEY_PREFIX_RESOURCE = "[resource:";
+    private static final String KEY_PREFIX_COUNT = "[count]";
+    private static final String KEY_SEPARATOR = "|";
+    private static final String KEY_SUFFIX = "]";
+    private static final int GENERATION_STRIPES = 1024;
+
+    private static SubscriptionCacheService _instance = new SubscriptionCacheService( );
+
+    // Generations of the entries, shared by the keys with the same hash
+    private final AtomicLongArray _generations = new AtomicLongArray( GENERATION_STRIPES );
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionCacheService( )
+    {
+        initCache( );
+    }
+
+    /**
+     * Get the instance of the cache service
+     * 
+     * @return The instance of the cache service
+     */
+    public static SubscriptionCacheService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return CACHE_SERVICE_NAME;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetCache( )
+    {
+        for ( int nStripe = 0; nStripe < GENERATION_STRIPES; nStripe++ )
+        {
+            _generations.incrementAndGet( nStripe );
+        }
+        super.resetCache( );
+    }
+
+    /**
+     * Get the generation of the cache entry of a subscription. It must be taken before the subscription is loaded from the database.
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @return The generation to give to {@link #putSubscription(Subscription, long)}
+     */
+    public long getSubscriptionGeneration( int nIdSubscription )
+    {
+        return getGeneration( getIdKey( nIdSubscription ) );
+    }
+
+    /**
+     * Get the generation of the cache entries of the list and of the number of subscriptions matching a filter. It must be taken before the list or the
+     * number is loaded from the database.
+     * 
+     * @param filter
+     *            The filter
+     * @return The generation to give to {@link #putSubscriptionList(SubscriptionFilter, List, long)} or {@link #putCount(SubscriptionFilter, int, long)}
+     */
+    public long getFilterGeneration( SubscriptionFilter filter )
+    {
+        String strKey = getFilterKey( filter );
+
+        return ( strKey != null ) ? getGeneration( strKey ) : 0L;
+    }
+
+    /**
+     * Get a subscription from the cache
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @return A copy of the cached subscription, or null if it is not in the cache
+     */
+    public Subscription getSubscription( int nIdSubscription )
+    {
+        Subscription subscription = (Subscription) getFromCache( getIdKey( nIdSubscription ) );
+        countLookup( subscription != null );
+
+        return ( subscription != null ) ? copy( subscription ) : null;
+    }
+
+    /**
+     * Put a copy of a subscription in the cache, unless it was invalidated since its generation was taken
+     * 
+     * @param subscription
+     *            The subscription
+     * @param lGeneration
+     *            The generation taken with {@link #getSubscriptionGeneration(int)} before the subscription was loaded
+     */
+    public void putSubscription( Subscription subscription, long lGeneration )
+    {
+        putIfCurrent( getIdKey( subscription.getIdSubscription( ) ), copy( subscription ), lGeneration );
+    }
+
+    /**
+     * Get the list of subscriptions matching a filter from the cache
+     * 
+     * @param filter
+     *            The filter
+     * @return A copy of the cached list and of its subscriptions, or null if the list is not in the cache or if the filter can not be cached
+     */
+    @SuppressWarnings( "unchecked" )
+    public List<Subscription> getSubscriptionList( SubscriptionFilter filter )
+    {
+        String strKey = getFilterKey( filter );
+
+        if ( strKey == null )
+        {
+            return null;
+        }
+
+        List<Subscription> listSubscription = (List<Subscription>) getFromCache( strKey );
+        countLookup( listSubscription != null );
+
+        return ( listSubscription != null ) ? copy( listSubscription ) : null;
+    }
+
+    /**
+     * Put a copy of the list of subscriptions matching a filter in the cache, unless it was invalidated since its generation was taken. Nothing is done if the
+     * filter can not be cached.
+     * 
+     * @param filter
+     *            The filter
+     * @param listSubscription
+     *            The list of subscriptions matching the filter
+     * @param lGeneration
+     *            The generation taken with {@link #getFilterGeneration(SubscriptionFilter)} before the list was loaded
+     */
+    public void putSubscriptionList( SubscriptionFilter filter, List<Subscription> listSubscription, long lGeneration )
+    {
+        String strKey = getFilterKey( filter );
+
+        if ( strKey != null )
+        {
+            putIfCurrent( strKey, copy( listSubscription ), lGeneration );
+        }
+    }
+
+    /**
+     * Get the number of subscriptions matching a filter from the cache. The number is taken from the cached list of subscriptions matching the filter if there
+     * is one.
+     * 
+     * @param filter
+     *            The filter
+     * @return The number of subscriptions, or null if it is not in the cache or if the filter can not be cached
+     */
+    @SuppressWarnings( "unchecked" )
+    public Integer getCount( SubscriptionFilter filter )
+    {
+        String strKey = getFilterKey( filter );
+
+        if ( strKey == null )
+        {
+            return null;
+        }
+
+        List<Subscription> listSubscription = (List<Subscription>) getFromCache( strKey );
+        Integer nCount = ( listSubscription != null ) ? Integer.valueOf( listSubscription.size( ) ) : (Integer) getFromCache( KEY_PREFIX_COUNT + strKey );
+        countLookup( nCount != null );
+
+        return nCount;
+    }
+
+    /**
+     * Put the number of subscriptions matching a filter in the cache, unless it was invalidated since its generation was taken. Nothing is done if the filter
+     * can not be cached.
+     * 
+     * @param filter
+     *            The filter
+     * @param nCount
+     *            The number of subscriptions matching the filter
+     * @param lGeneration
+     *            The generation taken with {@link #getFilterGeneration(SubscriptionFilter)} before the number was loaded
+     */
+    public void putCount( SubscriptionFilter filter, int nCount, long lGeneration )
+    {
+        String strKey = getFilterKey( filter );
+
+        if ( strKey != null )
+        {
+            putIfCurrent( KEY_PREFIX_COUNT + strKey, nCount, lGeneration, strKey );
+        }
+    }
+
+    /**
+     * Remove every entry that may contain a given subscription
+     * 
+     * @param subscription
+     *            The created, modified or removed subscription
+     */
+    public void invalidate( Subscription subscription )
+    {
+        if ( !isCacheEnable( ) )
+        {
+            return;
+        }
+
+        String strUserKey = getUserKey( subscription.getUserId( ) );
+        String strResourceKey = getResourceKey( subscription.getSubscriptionProvider( ), subscription.getSubscriptionKey( ),
+                subscription.getIdSubscribedResource( ) );
+
+        String strIdKey = getIdKey( subscription.getIdSubscription( ) );
+
+        // Generations are incremented before the entries are removed, so that a reader either sees the new generation or puts its value before the removal
+        incrementGeneration( strIdKey );
+        incrementGeneration( strUserKey );
+        incrementGeneration( strResourceKey );
+        removeKey( strIdKey );
+        removeKey( strUserKey );
+        removeKey( KEY_PREFIX_COUNT + strUserKey );
+        removeKey( strResourceKey );
+        removeKey( KEY_PREFIX_COUNT + strResourceKey );
+    }
+
+    /**
+     * Put a value in the cache, unless its entry was invalidated since the given generation was taken
+     * 
+     * @param strKey
+     *            The key of the entry
+     * @param value
+     *            The value
+     * @param lGeneration
+     *            The generation of the entry taken before the value was loaded
+     */
+    private void putIfCurrent( String strKey, Object value, long lGeneration )
+    {
+        putIfCurrent( strKey, value, lGeneration, strKey );
+    }
+
+    /**
+     * Put a value in the cache, unless its entry was invalidated since the given generation was taken
+     * 
+     * @param strKey
+     *            The key of the entry
+     * @param value
+     *            The value
+     * @param lGeneration
+     *            The generation of the entry taken before the value was loaded
+     * @param strGenerationKey
+     *            The key whose generation applies to the entry
+     */
+    private void putIfCurrent( String strKey, Object value, long lGeneration, String strGenerationKey )
+    {
+        if ( !isCacheEnable( ) || getGeneration( strGenerationKey ) != lGeneration )
+        {
+            return;
+        }
+
+        putInCache( strKey, value );
+
+        // The entry was invalidated between the check and the put : the removal may have happened before the put
+        if ( getGeneration( strGenerationKey ) != lGeneration )
+        {
+            removeKey( strKey );
+        }
+    }
+
+    /**
+     * Get the generation of a cache key
+     * 
+     * @param strKey
+     *            The key
+     * @return The generation
+     */
+    private long getGeneration( String strKey )
+    {
+        return _generations.get( getStripe( strKey ) );
+    }
+
+    /**
+     * Increment the generation of a cache key
+     * 
+     * @param strKey
+     *            The key
+     */
+    private void incrementGeneration( String strKey )
+    {
+        _generations.incrementAndGet( getStripe( strKey ) );
+    }
+
+    /**
+     * Get the stripe of the generation of a cache key
+     * 
+     * @param strKey
+     *            The key
+     * @return The index of the stripe
+     */
+    private static int getStripe( String strKey )
+    {
+        return ( strKey.hashCode( ) & Integer.MAX_VALUE ) % GENERATION_STRIPES;
+    }
+
+    /**
+     * Copy a subscription
+     * 
+     * @param subscription
+     *            The subscription
+     * @return The copy
+     */
+    private static Subscription copy( Subscription subscription )
+    {
+        Subscription copy = new Subscription( );
+        copy.setIdSubscription( subscription.getIdSubscription( ) );
+        copy.setUserId( subscription.getUserId( ) );
+        copy.setSubscriptionProvider( subscription.getSubscriptionProvider( ) );
+        copy.setSubscriptionKey( subscription.getSubscriptionKey( ) );
+        copy.setIdSubscribedResource( subscription.getIdSubscribedResource( ) );
+
+        return copy;
+    }
+
+    /**
+     * Copy a list of subscriptions and its subscriptions
+     * 
+     * @param listSubscription
+     *            The list
+     * @return The copy
+     */
+    private static List<Subscription> copy( List<Subscription> listSubscription )
+    {
+        List<Subscription> listCopy = new ArrayList<>( listSubscription.size( ) );
+        for ( Subscription subscription : listSubscription )
+        {
+            listCopy.add( copy( subscription ) );
+        }
+
+        return listCopy;
+    }
+
+    /**
+     * Count a lookup in the cache metrics
+     * 
+     * @param bHit
+     *            True if the lookup found an entry, false otherwise
+     */
+    private void countLookup( boolean bHit )
+    {
+        if ( isCacheEnable( ) )
+        {
+            SubscriptionMetrics.getInstance( ).increment(
+                    bHit ? SubscriptionMetrics.COUNTER_SUBSCRIPTION_CACHE_HIT : SubscriptionMetrics.COUNTER_SUBSCRIPTION_CACHE_MISS );
+        }
+    }
+
+    /**
+     * Get the cache key of a filter. Only filters on a single user or on a single subscribed resource are cached, since those are the only lists that can be
+     * invalidated precisely. Pages of lists are not cached.
+     * 
+     * @param filter
+     *            The filter
+     * @return The cache key, or null if lists matching this filter are not cached
+     */
+    private static String getFilterKey( SubscriptionFilter filter )
+    {
+        if ( filter.isPaginated( ) )
+        {
+            return null;
+        }
+
+        boolean bHasUser = StringUtils.isNotEmpty( filter.getUserId( ) );
+        boolean bHasResource = filter.getSubscriptionProvider( ) != null && filter.getSubscriptionKey( ) != null
+                && filter.getIdSubscribedResource( ) != null;
+
+        if ( bHasUser && filter.getSubscriptionProvider( ) == null && filter.getSubscriptionKey( ) == null && filter.getIdSubscribedResource( ) == null )
+        {
+            return getUserKey( filter.getUserId( ) );
+        }
+
+        if ( bHasResource && !bHasUser )
+        {
+            return getResourceKey( filter.getSubscriptionProvider( ), filter.getSubscriptionKey( ), filter.getIdSubscribedResource( ) );
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the cache key of a subscription
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @return The cache key
+     */
+    private static String getIdKey( int nIdSubscription )
+    {
+        return KEY_PREFIX_ID + nIdSubscription + KEY_SUFFIX;
+    }
+
+    /**
+     * Get the cache key of the subscriptions of a user
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @return The cache key
+     */
+    private static String getUserKey( String strUserId )
+    {
+        return KEY_PREFIX_USER + strUserId + KEY_SUFFIX;
+    }
+
+    /**
+     * Get the cache key of the subscriptions to a resource
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return The cache key
+     */
+    private static String getResourceKey( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        return KEY_PREFIX_RESOURCE + strSubscriptionProvider + KEY_SEPARATOR + strSubscriptionKey + KEY_SEPARATOR + strIdSubscribedResource + KEY_SUFFIX;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.ISubscriptionDigestEventDAO;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionDigestEvent;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service that coalesces the frequent updates of a subscribed resource into digests.<br />
+ * The first update of a resource published with {@link #publish(String, String, String, String)} opens a digest window for this resource. The updates
+ * published until the window ends are stored, and the {@link SubscriptionDigestDaemon daemon} then starts a single
+ * {@link SubscriptionFanOutService fan-out} for all of them : each subscriber of the resource is notified once per window, with the payload built by
+ * {@link ISubscriptionFanOutProvider#getDigestPayload(List)} from the distinct payloads of the window. Only providers that implement
+ * {@link ISubscriptionFanOutProvider} can publish updates.<br />
+ * The length of the window is set per provider by <code>subscribe.digest.window.&lt;provider&gt;</code>, or for every provider by
+ * <code>subscribe.digest.window</code>, in seconds. Updates of providers without window start a fan-out at once. Windows end when the daemon runs, so they
+ * may last up to the interval of the daemon longer.
+ */
+public final class SubscriptionDigestService
+{
+    private static final String PROPERTY_WINDOW = "subscribe.digest.window";
+    private static final String PROPERTY_WINDOW_PREFIX = PROPERTY_WINDOW + ".";
+    private static final long DEFAULT_WINDOW = 0L;
+
+    private static SubscriptionDigestService _instance = new SubscriptionDigestService( );
+    private ISubscriptionDigestEventDAO _dao = SpringContextService.getBean( "subscribe.subscriptionDigestEventDAO" );
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionDigestService( )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return The instance of the service
+     */
+    public static SubscriptionDigestService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Publish an update of a subscribed resource to its subscribers. The update is added to the digest window of the resource if the provider has a window,
+     * and is fanned out at once otherwise.
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the updated resource
+     * @param strPayload
+     *            The payload of the update
+     * @throws AppException
+     *             if the provider does not support fan-outs
+     */
+    public void publish( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource, String strPayload )
+    {
+        SubscriptionFanOutService.getInstance( ).checkFanOutSupported( strSubscriptionProvider );
+
+        if ( getWindow( strSubscriptionProvider ) <= 0 )
+        {
+            SubscriptionFanOutService.getInstance( ).fanOut( strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource, strPayload );
+            return;
+        }
+
+        SubscriptionDigestEvent event = new SubscriptionDigestEvent( );
+        event.setSubscriptionProvider( strSubscriptionProvider );
+        event.setSubscriptionKey( strSubscriptionKey );
+        event.setIdSubscribedResource( strIdSubscribedResource );
+        event.setPayload( strPayload );
+        event.setDateEvent( new Timestamp( System.currentTimeMillis( ) ) );
+        _dao.insert( event, SubscribePlugin.getPlugin( ) );
+    }
+
+    /**
+     * Start a fan-out for each resource whose digest window ended
+     * 
+     * @return The number of digests sent
+     */
+    public int processEndedWindows( )
+    {
+        Plugin plugin = SubscribePlugin.getPlugin( );
+        long lNow = System.currentTimeMillis( );
+        int nSent = 0;
+
+        for ( SubscriptionDigestEvent firstEvent : _dao.selectFirstEventByResource( plugin ) )
+        {
+            long lWindow = TimeUnit.SECONDS.toMillis( getWindow( firstEvent.getSubscriptionProvider( ) ) );
+
+            if ( firstEvent.getDateEvent( ).getTime( ) + lWindow > lNow )
+            {
+                continue;
+            }
+
+            try
+            {
+                if ( send( firstEvent, plugin ) )
+                {
+                    nSent++;
+                }
+            }
+            catch( RuntimeException e )
+            {
+                AppLogService.error( "Unable to send the digest of resource " + firstEvent.getIdSubscribedResource( ) + " of provider "
+                        + firstEvent.getSubscriptionProvider( ) + " : " + e.getMessage( ), e );
+            }
+        }
+
+        if ( nSent > 0 )
+        {
+            SubscriptionFanOutService.getInstance( ).dispatchInBackground( );
+        }
+
+        return nSent;
+    }
+
+    /**
+     * Replace the events of a resource with a fan-out of their digest. The events are locked, so that a digest is sent by a single node.
+     * 
+     * @param firstEvent
+     *            The first event of the resource
+     * @param plugin
+     *            The plugin
+     * @return True if a digest was stored, false if the events were already sent by another node or if the provider is not available
+     */
+    private boolean send( SubscriptionDigestEvent firstEvent, Plugin plugin )
+    {
+        String strProvider = firstEvent.getSubscriptionProvider( );
+        ISubscriptionProviderService providerService = SubscriptionService.getInstance( ).getProviderService( strProvider );
+
+        // The plugin of the provider may not be installed or enabled yet
+        if ( !( providerService instanceof ISubscriptionFanOutProvider ) )
+        {
+            return false;
+        }
+
+        ISubscriptionFanOutProvider provider = (ISubscriptionFanOutProvider) providerService;
+
+        TransactionManager.beginTransaction( plugin );
+        try
+        {
+            List<SubscriptionDigestEvent> listEvents = _dao.selectEventsForUpdate( strProvider, firstEvent.getSubscriptionKey( ),
+                    firstEvent.getIdSubscribedResource( ), plugin );
+            Set<String> setPayloads = new LinkedHashSet<>( );
+            List<Integer> listIdEvents = new ArrayList<>( listEvents.size( ) );
+
+            for ( SubscriptionDigestEvent event : listEvents )
+            {
+                if ( event.getPayload( ) != null )
+                {
+                    setPayloads.add( event.getPayload( ) );
+                }
+                listIdEvents.add( event.getIdEvent( ) );
+            }
+
+            if ( !listEvents.isEmpty( ) )
+            {
+                SubscriptionFanOutService.getInstance( ).createFanOut( strProvider, firstEvent.getSubscriptionKey( ), firstEvent.getIdSubscribedResource( ),
+                        provider.getDigestPayload( new ArrayList<>( setPayloads ) ) );
+                _dao.deleteBatch( listIdEvents, plugin );
+            }
+
+            TransactionManager.commitTransaction( plugin );
+
+            return !listEvents.isEmpty( );
+        }
+        catch( RuntimeException e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw e;
+        }
+    }
+
+    /**
+     * Get the length of the digest window of a provider
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @return The length of the window in seconds, or 0 if updates are not coalesced
+     */
+    private static long getWindow( String strSubscriptionProvider )
+    {
+        return AppPropertiesService.getPropertyLong( PROPERTY_WINDOW_PREFIX + strSubscriptionProvider,
+                AppPropertiesService.getPropertyLong( PROPERTY_WINDOW, DEFAULT_WINDOW ) );
+    }
+}
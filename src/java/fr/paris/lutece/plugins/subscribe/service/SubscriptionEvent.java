@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+
+/**
+ * Event published when subscriptions are created, updated or removed.<br />
+ * Removals of subscriptions by filter publish a single event that holds the filter instead of a subscription.
+ */
+public final class SubscriptionEvent
+{
+    /**
+     * Types of events
+     */
+    public enum Type
+    {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    private final Type _type;
+    private final int _nIdSubscription;
+    private final Subscription _subscription;
+    private final Subscription _previousSubscription;
+    private final SubscriptionFilter _filter;
+    private final long _lTimestamp;
+
+    /**
+     * Constructor
+     * 
+     * @param type
+     *            The type of the event
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @param subscription
+     *            The subscription
+     * @param previousSubscription
+     *            The subscription before it was updated
+     * @param filter
+     *            The filter of removed subscriptions
+     */
+    private SubscriptionEvent( Type type, int nIdSubscription, Subscription subscription, Subscription previousSubscription, SubscriptionFilter filter )
+    {
+        _type = type;
+        _nIdSubscription = nIdSubscription;
+        _subscription = subscription;
+        _previousSubscription = previousSubscription;
+        _filter = filter;
+        _lTimestamp = System.currentTimeMillis( );
+    }
+
+    /**
+     * Create the event of a created subscription
+     * 
+     * @param subscription
+     *            The created subscription
+     * @return The event
+     */
+    public static SubscriptionEvent created( Subscription subscription )
+    {
+        return new SubscriptionEvent( Type.CREATE, subscription.getIdSubscription( ), subscription, null, null );
+    }
+
+    /**
+     * Create the event of an updated subscription
+     * 
+     * @param subscription
+     *            The updated subscription
+     * @param previousSubscription
+     *            The subscription before it was updated, or null if it is not known
+     * @return The event
+     */
+    public static SubscriptionEvent updated( Subscription subscription, Subscription previousSubscription )
+    {
+        return new SubscriptionEvent( Type.UPDATE, subscription.getIdSubscription( ), subscription, previousSubscription, null );
+    }
+
+    /**
+     * Create the event of a removed subscription
+     * 
+     * @param nIdSubscription
+     *            The id of the removed subscription
+     * @param subscription
+     *            The removed subscription, or null if it is not known
+     * @return The event
+     */
+    public static SubscriptionEvent deleted( int nIdSubscription, Subscription subscription )
+    {
+        return new SubscriptionEvent( Type.DELETE, nIdSubscription, subscription, null, null );
+    }
+
+    /**
+     * Create the event of subscriptions removed by filter
+     * 
+     * @param filter
+     *            The filter of the removed subscriptions
+     * @return The event
+     */
+    public static SubscriptionEvent deletedByFilter( SubscriptionFilter filter )
+    {
+        return new SubscriptionEvent( Type.DELETE, 0, null, null, filter );
+    }
+
+    /**
+     * Get the type of the event
+     * 
+     * @return The type of the event
+     */
+    public Type getType( )
+    {
+        return _type;
+    }
+
+    /**
+     * Get the id of the subscription
+     * 
+     * @return The id of the subscription, or 0 for removals by filter
+     */
+    public int getIdSubscription( )
+    {
+        return _nIdSubscription;
+    }
+
+    /**
+     * Get the subscription
+     * 
+     * @return The subscription, or null if it is not known
+     */
+    public Subscription getSubscription( )
+    {
+        return _subscription;
+    }
+
+    /**
+     * Get the subscription before it was updated
+     * 
+     * @return The previous subscription, or null if the event is not an update or if the previous subscription is not known
+     */
+    public Subscription getPreviousSubscription( )
+    {
+        return _previousSubscription;
+    }
+
+    /**
+     * Get the filter of subscriptions removed by filter
+     * 
+     * @return The filter, or null if the event is about a single subscription
+     */
+    public SubscriptionFilter getFilter( )
+    {
+        return _filter;
+    }
+
+    /**
+     * Get the date of the event
+     * 
+     * @return The date of the event, in milliseconds
+     */
+    public long getTimestamp( )
+    {
+        return _lTimestamp;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.portal.service.plugin.PluginEvent;
+import fr.paris.lutece.portal.service.plugin.PluginEventListener;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process bus of subscription events.<br />
+ * Events are published without blocking onto a bounded queue. A single thread takes them from the queue and gives them to every listener by batches : a
+ * batch is delivered once it holds <code>subscribe.eventBus.maxBatchSize</code> events, or <code>subscribe.eventBus.maxDelay</code> ms after its first
+ * event. Events published while the queue is full are dropped and counted in the metrics. Nothing is queued while no listener is registered.
+ */
+public final class SubscriptionEventBus implements PluginEventListener
+{
+    private static final String PROPERTY_QUEUE_SIZE = "subscribe.eventBus.queueSize";
+    private static final String PROPERTY_MAX_BATCH_SIZE = "subscribe.eventBus.maxBatchSize";
+    private static final String PROPERTY_MAX_DELAY = "subscribe.eventBus.maxDelay";
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    private static final long DEFAULT_MAX_DELAY = 200L;
+    private static final String THREAD_NAME = "subscribe-event-bus";
+
+    private static SubscriptionEventBus _instance = new SubscriptionEventBus( );
+
+    private final BlockingQueue<SubscriptionEvent> _queue;
+    private final int _nMaxBatchSize;
+    private final long _lMaxDelay;
+    private final List<ISubscriptionEventListener> _listRegisteredListeners = new CopyOnWriteArrayList<>( );
+    private volatile List<ISubscriptionEventListener> _listListeners = Collections.emptyList( );
+    private Thread _thread;
+    private boolean _bShutdown;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionEventBus( )
+    {
+        _queue = new LinkedBlockingQueue<>( Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE ) ) );
+        _nMaxBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE ) );
+        _lMaxDelay = AppPropertiesService.getPropertyLong( PROPERTY_MAX_DELAY, DEFAULT_MAX_DELAY );
+    }
+
+    /**
+     * Get the instance of the event bus
+     * 
+     * @return The instance of the event bus
+     */
+    public static SubscriptionEventBus getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Register a listener that is not declared in the Spring context
+     * 
+     * @param listener
+     *            The listener
+     */
+    public void register( ISubscriptionEventListener listener )
+    {
+        _listRegisteredListeners.add( listener );
+        refresh( );
+    }
+
+    /**
+     * Unregister a listener registered with {@link #register(ISubscriptionEventListener)}
+     * 
+     * @param listener
+     *            The listener
+     */
+    public void unregister( ISubscriptionEventListener listener )
+    {
+        _listRegisteredListeners.remove( listener );
+        refresh( );
+    }
+
+    /**
+     * Rebuild the list of listeners from the Spring context and the registered listeners, and start the thread of the bus if there is any listener
+     */
+    public synchronized void refresh( )
+    {
+        if ( _bShutdown )
+        {
+            return;
+        }
+
+        List<ISubscriptionEventListener> listListeners = new ArrayList<>( SpringContextService.getBeansOfType( ISubscriptionEventListener.class ) );
+        listListeners.addAll( _listRegisteredListeners );
+        _listListeners = Collections.unmodifiableList( listListeners );
+
+        if ( !listListeners.isEmpty( ) && _thread == null )
+        {
+            _thread = new Thread( this::dispatch, THREAD_NAME );
+            _thread.setDaemon( true );
+            _thread.start( );
+        }
+    }
+
+    /**
+     * Stop the thread of the bus. The events waiting in the queue are not delivered.
+     */
+    public synchronized void shutdown( )
+    {
+        _bShutdown = true;
+
+        if ( _thread != null )
+        {
+            _thread.interrupt( );
+            _thread = null;
+        }
+        _listListeners = Collections.emptyList( );
+        _queue.clear( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPluginEvent( PluginEvent event )
+    {
+        refresh( );
+    }
+
+    /**
+     * Check if any listener is registered
+     * 
+     * @return True if events are delivered to at least one listener
+     */
+    public boolean hasListeners( )
+    {
+        return !_listListeners.isEmpty( );
+    }
+
+    /**
+     * Publish an event. This method never blocks.
+     * 
+     * @param event
+     *            The event
+     */
+    public void publish( SubscriptionEvent event )
+    {
+        if ( hasListeners( ) && !_queue.offer( event ) )
+        {
+            SubscriptionMetrics.getInstance( ).increment( SubscriptionMetrics.COUNTER_EVENT_DROPPED );
+            AppLogService.debug( "Subscription event queue is full, event dropped" );
+        }
+    }
+
+    /**
+     * Take the events from the queue and deliver them by batches, until the thread is interrupted
+     */
+    private void dispatch( )
+    {
+        List<SubscriptionEvent> listBatch = new ArrayList<>( _nMaxBatchSize );
+
+        try
+        {
+            while ( !Thread.currentThread( ).isInterrupted( ) )
+            {
+                listBatch.add( _queue.take( ) );
+                long lDeadline = System.nanoTime( ) + TimeUnit.MILLISECONDS.toNanos( _lMaxDelay );
+
+                while ( listBatch.size( ) < _nMaxBatchSize )
+                {
+                    _queue.drainTo( listBatch, _nMaxBatchSize - listBatch.size( ) );
+                    long lRemaining = lDeadline - System.nanoTime( );
+
+                    if ( listBatch.size( ) >= _nMaxBatchSize || lRemaining <= 0 )
+                    {
+                        break;
+                    }
+
+                    SubscriptionEvent event = _queue.poll( lRemaining, TimeUnit.NANOSECONDS );
+                    if ( event == null )
+                    {
+                        break;
+                    }
+                    listBatch.add( event );
+                }
+
+                deliver( new ArrayList<>( listBatch ) );
+                listBatch.clear( );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+
+    /**
+     * Deliver a batch of events to every listener. A failing listener does not prevent the others from receiving the batch.
+     * 
+     * @param listEvents
+     *            The events
+     */
+    private void deliver( List<SubscriptionEvent> listEvents )
+    {
+        List<SubscriptionEvent> listReadOnlyEvents = Collections.unmodifiableList( listEvents );
+
+        for ( ISubscriptionEventListener listener : _listListeners )
+        {
+            try
+            {
+                listener.processSubscriptionEvents( listReadOnlyEvents );
+            }
+            catch( Exception e )
+            {
+                AppLogService.error( "Subscription event listener " + listener.getClass( ).getName( ) + " failed : " + e.getMessage( ), e );
+            }
+        }
+    }
+}
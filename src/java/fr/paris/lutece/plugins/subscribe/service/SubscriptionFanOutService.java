@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.ISubscriptionDAO;
+import fr.paris.lutece.plugins.subscribe.business.ISubscriptionFanOutDAO;
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFanOut;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFanOutChunk;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service that notifies the subscribers of a resource in background, instead of looping over {@link SubscriptionService#getSubscriberList} in a request.<br />
+ * A fan-out splits the subscriptions of the resource into chunks of consecutive ids, stored with the fan-out. The chunks are processed in parallel by a
+ * bounded pool of workers : each worker claims a chunk, gives its subscriptions to the provider page by page, and records the id of the last notified
+ * subscription after each page. If a node stops during a fan-out, its chunks are claimed again once their lease expires, by any node, and resume from their
+ * last checkpoint : only the page being notified may be sent twice. Subscriptions created after the fan-out started are not notified.
+ */
+public final class SubscriptionFanOutService
+{
+    private static final String PROPERTY_CHUNK_SIZE = "subscribe.fanOut.chunkSize";
+    private static final String PROPERTY_PAGE_SIZE = "subscribe.fanOut.pageSize";
+    private static final String PROPERTY_THREADS = "subscribe.fanOut.threads";
+    private static final String PROPERTY_LEASE = "subscribe.fanOut.lease";
+    private static final String PROPERTY_MAX_ATTEMPTS = "subscribe.fanOut.maxAttempts";
+    private static final String PROPERTY_RETRY_DELAY = "subscribe.fanOut.retryDelay";
+    private static final String PROPERTY_MAX_RETRY_DELAY = "subscribe.fanOut.maxRetryDelay";
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int DEFAULT_THREADS = 4;
+    private static final long DEFAULT_LEASE = 300L;
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_RETRY_DELAY = 60L;
+    private static final long DEFAULT_MAX_RETRY_DELAY = 3600L;
+    private static final String CALLBACK_NOTIFY_SUBSCRIBERS = "notifySubscribers";
+    private static final String THREAD_NAME_DISPATCHER = "subscribe-fanout-dispatcher";
+    private static final String THREAD_NAME_WORKER = "subscribe-fanout-worker-";
+
+    private static SubscriptionFanOutService _instance = new SubscriptionFanOutService( );
+    private ISubscriptionFanOutDAO _dao = SpringContextService.getBean( "subscribe.subscriptionFanOutDAO" );
+    private ISubscriptionDAO _subscriptionDao = SpringContextService.getBean( "subscribe.subscriptionDAO" );
+
+    private final int _nThreads;
+    private final AtomicInteger _nActiveWorkers = new AtomicInteger( );
+    private final Object _lockExecutors = new Object( );
+    private ExecutorService _dispatcher;
+    private ExecutorService _workers;
+    private boolean _bShutdown;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionFanOutService( )
+    {
+        _nThreads = Math.max( AppPropertiesService.getPropertyInt( PROPERTY_THREADS, DEFAULT_THREADS ), 1 );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return The instance of the service
+     */
+    public static SubscriptionFanOutService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Stop the dispatcher and the workers, if they were started. The chunks being processed are given to other nodes once their lease expires.
+     */
+    public void shutdown( )
+    {
+        synchronized( _lockExecutors )
+        {
+            _bShutdown = true;
+
+            if ( _dispatcher != null )
+            {
+                _dispatcher.shutdownNow( );
+                _dispatcher = null;
+            }
+            if ( _workers != null )
+            {
+                _workers.shutdownNow( );
+                _workers = null;
+            }
+        }
+    }
+
+    /**
+     * Get the thread that dispatches the chunks in background, started on first use
+     * 
+     * @return The dispatcher, or null if the service is shut down
+     */
+    private ExecutorService getDispatcher( )
+    {
+        synchronized( _lockExecutors )
+        {
+            if ( _dispatcher == null && !_bShutdown )
+            {
+                _dispatcher = Executors.newSingleThreadExecutor( runnable -> {
+                    Thread thread = new Thread( runnable, THREAD_NAME_DISPATCHER );
+                    thread.setDaemon( true );
+                    return thread;
+                } );
+            }
+
+            return _dispatcher;
+        }
+    }
+
+    /**
+     * Get the pool of workers that process the chunks, started on first use
+     * 
+     * @return The workers, or null if the service is shut down
+     */
+    private ExecutorService getWorkers( )
+    {
+        synchronized( _lockExecutors )
+        {
+            if ( _workers == null && !_bShutdown )
+            {
+                AtomicInteger nWorker = new AtomicInteger( );
+                _workers = Executors.newFixedThreadPool( _nThreads, runnable -> {
+                    Thread thread = new Thread( runnable, THREAD_NAME_WORKER + nWorker.incrementAndGet( ) );
+                    thread.setDaemon( true );
+                    return thread;
+                } );
+            }
+
+            return _workers;
+        }
+    }
+
+    /**
+     * Start notifying the subscribers of a resource in background. The method returns once the fan-out and its chunks are stored : each subscriber is then
+     * given to {@link ISubscriptionFanOutProvider#notifySubscribers(List, String)} of the provider.
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @param strPayload
+     *            The payload to give to the provider with each chunk of subscribers
+     * @return The id of the fan-out, or 0 if the resource has no subscriber
+     * @throws AppException
+     *             if the provider does not support fan-outs
+     */
+    public int fanOut( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource, String strPayload )
+    {
+        int nIdFanOut = createFanOut( strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource, strPayload );
+
+        if ( nIdFanOut != 0 )
+        {
+            dispatchInBackground( );
+        }
+
+        return nIdFanOut;
+    }
+
+    /**
+     * Store a fan-out and its chunks without dispatching them. If a transaction is in progress, the fan-out is stored in this transaction, and
+     * {@link #dispatchInBackground()} must be called once it is committed.
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @param strPayload
+     *            The payload to give to the provider with each chunk of subscribers
+     * @return The id of the fan-out, or 0 if the resource has no subscriber
+     * @throws AppException
+     *             if the provider does not support fan-outs
+     */
+    int createFanOut( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource, String strPayload )
+    {
+        checkFanOutSupported( strSubscriptionProvider );
+
+        Plugin plugin = SubscribePlugin.getPlugin( );
+        SubscriptionFilter filter = new SubscriptionFilter( null, strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource );
+        List<Integer> listBoundaries = _subscriptionDao.selectIdBoundaries( filter,
+                AppPropertiesService.getPropertyInt( PROPERTY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE ), plugin );
+
+        if ( listBoundaries.isEmpty( ) )
+        {
+            return 0;
+        }
+
+        Timestamp dateNow = new Timestamp( System.currentTimeMillis( ) );
+        SubscriptionFanOut fanOut = new SubscriptionFanOut( );
+        fanOut.setSubscriptionProvider( strSubscriptionProvider );
+        fanOut.setSubscriptionKey( strSubscriptionKey );
+        fanOut.setIdSubscribedResource( strIdSubscribedResource );
+        fanOut.setPayload( strPayload );
+        fanOut.setDateCreation( dateNow );
+
+        TransactionManager.beginTransaction( plugin );
+        try
+        {
+            _dao.insert( fanOut, plugin );
+
+            List<SubscriptionFanOutChunk> listChunks = new ArrayList<>( listBoundaries.size( ) );
+            int nIdSubscriptionFrom = 0;
+            for ( Integer nIdSubscriptionTo : listBoundaries )
+            {
+                SubscriptionFanOutChunk chunk = new SubscriptionFanOutChunk( );
+                chunk.setFanOut( fanOut );
+                chunk.setIdSubscriptionFrom( nIdSubscriptionFrom );
+                chunk.setIdSubscriptionTo( nIdSubscriptionTo );
+                chunk.setDateLeaseEnd( dateNow );
+                listChunks.add( chunk );
+                nIdSubscriptionFrom = nIdSubscriptionTo;
+            }
+            _dao.insertChunks( listChunks, plugin );
+
+            TransactionManager.commitTransaction( plugin );
+        }
+        catch( Exception e )
+        {
+            TransactionManager.rollBack( plugin );
+            throw new AppException( e.getMessage( ), e );
+        }
+
+        return fanOut.getIdFanOut( );
+    }
+
+    /**
+     * Check that a provider supports fan-outs, that is that it implements {@link ISubscriptionFanOutProvider}. Providers that are not registered yet are
+     * accepted, since their plugin may be enabled before the fan-out is processed.
+     * 
+     * @param strSubscriptionProvider
+     *            The name of the provider
+     * @throws AppException
+     *             if the provider is registered but does not support fan-outs
+     */
+    void checkFanOutSupported( String strSubscriptionProvider )
+    {
+        ISubscriptionProviderService provider = SubscriptionService.getInstance( ).getProviderService( strSubscriptionProvider );
+
+        if ( provider != null && !( provider instanceof ISubscriptionFanOutProvider ) )
+        {
+            throw new AppException( "The subscription provider " + strSubscriptionProvider + " does not support fan-outs" );
+        }
+    }
+
+    /**
+     * Dispatch the waiting chunks from the dispatcher thread
+     */
+    void dispatchInBackground( )
+    {
+        ExecutorService dispatcher = getDispatcher( );
+
+        if ( dispatcher != null )
+        {
+            try
+            {
+                dispatcher.execute( this::dispatch );
+            }
+            catch( RejectedExecutionException e )
+            {
+                AppLogService.debug( "Subscription fan-out dispatcher is shut down" );
+            }
+        }
+    }
+
+    /**
+     * Claim the chunks that are waiting to be processed, or whose lease expired, as long as workers are available, and give them to the workers
+     * 
+     * @return The number of chunks given to the workers
+     */
+    public synchronized int dispatch( )
+    {
+        Plugin plugin = SubscribePlugin.getPlugin( );
+        ExecutorService workers = getWorkers( );
+        int nDispatched = 0;
+
+        if ( workers == null )
+        {
+            return nDispatched;
+        }
+
+        try
+        {
+            int nAvailableWorkers = _nThreads - _nActiveWorkers.get( );
+
+            while ( nAvailableWorkers > 0 )
+            {
+                List<SubscriptionFanOutChunk> listChunks = _dao.selectClaimableChunks( new Timestamp( System.currentTimeMillis( ) ), nAvailableWorkers,
+                        plugin );
+                int nClaimed = 0;
+
+                for ( SubscriptionFanOutChunk chunk : listChunks )
+                {
+                    if ( _dao.claim( chunk, getLeaseEnd( ), plugin ) )
+                    {
+                        try
+                        {
+                            workers.execute( ( ) -> process( chunk ) );
+                        }
+                        catch( RejectedExecutionException e )
+                        {
+                            // The workers are shut down : the chunk is released so that another node claims it without waiting for its lease. The claim
+                            // still counts as an attempt
+                            _dao.checkpoint( chunk, chunk.getIdSubscriptionFrom( ), new Timestamp( System.currentTimeMillis( ) ), plugin );
+                            return nDispatched + nClaimed;
+                        }
+                        _nActiveWorkers.incrementAndGet( );
+                        nClaimed++;
+                    }
+                }
+                nAvailableWorkers -= nClaimed;
+                nDispatched += nClaimed;
+
+                // Stop when no chunk is waiting, or when every loaded chunk was claimed by other nodes
+                if ( nClaimed == 0 )
+                {
+                    break;
+                }
+            }
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Unable to dispatch the chunks of subscription fan-outs", e );
+        }
+
+        return nDispatched;
+    }
+
+    /**
+     * Notify the subscribers of a claimed chunk, from its checkpoint
+     * 
+     * @param chunk
+     *            The claimed chunk
+     */
+    private void process( SubscriptionFanOutChunk chunk )
+    {
+        Plugin plugin = SubscribePlugin.getPlugin( );
+        SubscriptionFanOut fanOut = chunk.getFanOut( );
+        SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+
+        try
+        {
+            ISubscriptionProviderService providerService = SubscriptionService.getInstance( ).getProviderService( fanOut.getSubscriptionProvider( ) );
+
+            // The plugin of the provider may not be installed or enabled yet
+            if ( providerService == null )
+            {
+                throw new AppException( "Unknown subscription provider " + fanOut.getSubscriptionProvider( ) );
+            }
+            if ( !( providerService instanceof ISubscriptionFanOutProvider ) )
+            {
+                throw new AppException( "The subscription provider " + fanOut.getSubscriptionProvider( ) + " does not support fan-outs" );
+            }
+
+            ISubscriptionFanOutProvider provider = (ISubscriptionFanOutProvider) providerService;
+
+            int nPageSize = AppPropertiesService.getPropertyInt( PROPERTY_PAGE_SIZE, DEFAULT_PAGE_SIZE );
+            SubscriptionFilter filter = new SubscriptionFilter( null, fanOut.getSubscriptionProvider( ), fanOut.getSubscriptionKey( ),
+                    fanOut.getIdSubscribedResource( ) );
+            filter.setLimit( nPageSize );
+
+            while ( chunk.getIdSubscriptionFrom( ) < chunk.getIdSubscriptionTo( ) )
+            {
+                filter.setIdSubscriptionAfter( chunk.getIdSubscriptionFrom( ) );
+
+                List<Subscription> listPage = new ArrayList<>( nPageSize );
+                for ( Subscription subscription : _subscriptionDao.findByFilter( filter, plugin ) )
+                {
+                    if ( subscription.getIdSubscription( ) <= chunk.getIdSubscriptionTo( ) )
+                    {
+                        listPage.add( subscription );
+                    }
+                }
+
+                if ( listPage.isEmpty( ) )
+                {
+                    break;
+                }
+
+                long lStart = metrics.startTimer( );
+                provider.notifySubscribers( listPage, fanOut.getPayload( ) );
+                metrics.stopProviderTimer( fanOut.getSubscriptionProvider( ), CALLBACK_NOTIFY_SUBSCRIBERS, lStart );
+                metrics.add( SubscriptionMetrics.COUNTER_FAN_OUT_NOTIFIED, listPage.size( ) );
+
+                if ( !_dao.checkpoint( chunk, listPage.get( listPage.size( ) - 1 ).getIdSubscription( ), getLeaseEnd( ), plugin ) )
+                {
+                    AppLogService.info( "Chunk " + chunk.getIdChunk( ) + " of subscription fan-out " + fanOut.getIdFanOut( )
+                            + " was claimed by another worker after its lease expired" );
+                    return;
+                }
+            }
+
+            complete( chunk, plugin );
+        }
+        catch( Exception e )
+        {
+            metrics.increment( SubscriptionMetrics.COUNTER_FAN_OUT_FAILED );
+
+            if ( chunk.getNbAttempts( ) >= AppPropertiesService.getPropertyInt( PROPERTY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS ) )
+            {
+                AppLogService.error( "Giving up chunk " + chunk.getIdChunk( ) + " of subscription fan-out " + fanOut.getIdFanOut( ) + " after "
+                        + chunk.getNbAttempts( ) + " attempts : " + e.getMessage( ), e );
+                metrics.increment( SubscriptionMetrics.COUNTER_FAN_OUT_DROPPED );
+                complete( chunk, plugin );
+            }
+            else
+            {
+                AppLogService.error( "Unable to process chunk " + chunk.getIdChunk( ) + " of subscription fan-out " + fanOut.getIdFanOut( ) + " : "
+                        + e.getMessage( ), e );
+                _dao.checkpoint( chunk, chunk.getIdSubscriptionFrom( ), getNextAttemptDate( chunk.getNbAttempts( ) ), plugin );
+            }
+        }
+        finally
+        {
+            _nActiveWorkers.decrementAndGet( );
+            dispatchInBackground( );
+        }
+    }
+
+    /**
+     * Delete a chunk that is completed or given up, and its fan-out if it was the last chunk
+     * 
+     * @param chunk
+     *            The chunk
+     * @param plugin
+     *            The plugin
+     */
+    private void complete( SubscriptionFanOutChunk chunk, Plugin plugin )
+    {
+        _dao.deleteChunk( chunk.getIdChunk( ), plugin );
+
+        if ( _dao.deleteIfComplete( chunk.getFanOut( ).getIdFanOut( ), plugin ) )
+        {
+            AppLogService.debug( "Subscription fan-out " + chunk.getFanOut( ).getIdFanOut( ) + " completed" );
+        }
+    }
+
+    /**
+     * Get the end of the lease of a chunk claimed or checkpointed now
+     * 
+     * @return The end of the lease
+     */
+    private static Timestamp getLeaseEnd( )
+    {
+        return new Timestamp( System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_LEASE, DEFAULT_LEASE ) ) );
+    }
+
+    /**
+     * Get the date of the next attempt to process a chunk. The delay doubles with each failed attempt.
+     * 
+     * @param nNbAttempts
+     *            The number of attempts already made
+     * @return The date of the next attempt
+     */
+    private static Timestamp getNextAttemptDate( int nNbAttempts )
+    {
+        long lRetryDelay = AppPropertiesService.getPropertyLong( PROPERTY_RETRY_DELAY, DEFAULT_RETRY_DELAY );
+        long lMaxRetryDelay = AppPropertiesService.getPropertyLong( PROPERTY_MAX_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY );
+        long lDelay = lRetryDelay << Math.min( Math.max( nNbAttempts - 1, 0 ), 20 );
+
+        return new Timestamp( System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( Math.min( lDelay, lMaxRetryDelay ) ) );
+    }
+}
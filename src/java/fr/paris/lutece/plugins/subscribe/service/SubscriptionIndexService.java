@@ -0,0 +1,702 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Optional in-memory index of subscriptions. It maps each subscribed resource (provider, subscription key and resource id) and each user to the sorted
+ * array of the ids of their subscriptions, so that subscribers of a resource are found without querying the database.<br />
+ * The index is loaded in background when the plugin starts, and is kept current by the subscription service. Until it is loaded, {@link #isReady()} returns
+ * false and callers must query the database. The index sees the writes made through the subscription service of this node, and the writes of the other
+ * nodes through their cache invalidations, see {@link SubscriptionCacheInvalidationService}.<br />
+ * The loader collects the subscriptions on its own and publishes them at once, each array being sorted a single time. The arrays are only copied on write
+ * for the updates made once the index is loaded or while it is loading. Removals made while loading are recorded, and applied again to the loaded
+ * subscriptions once they are published.
+ */
+public final class SubscriptionIndexService
+{
+    private static final String PROPERTY_ENABLED = "subscribe.index.enabled";
+    private static final String THREAD_NAME = "subscribe-index-loader";
+    private static final int [ ] EMPTY = new int [ 0];
+
+    private static SubscriptionIndexService _instance = new SubscriptionIndexService( );
+
+    private final boolean _bEnabled;
+    private final ConcurrentMap<ResourceKey, int [ ]> _mapIdsByResource = new ConcurrentHashMap<>( );
+    private final ConcurrentMap<String, int [ ]> _mapIdsByUser = new ConcurrentHashMap<>( );
+    private final ConcurrentMap<Integer, IndexEntry> _mapEntries = new ConcurrentHashMap<>( );
+    private final Set<Integer> _setRemovedWhileLoading = ConcurrentHashMap.newKeySet( );
+    private final Queue<SubscriptionFilter> _queueFiltersRemovedWhileLoading = new ConcurrentLinkedQueue<>( );
+    private volatile boolean _bLoading;
+    private volatile boolean _bReady;
+    private ExecutorService _loader;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionIndexService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+    }
+
+    /**
+     * Get the instance of the index
+     * 
+     * @return The instance of the index
+     */
+    public static SubscriptionIndexService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Check if the index is loaded and can answer queries
+     * 
+     * @return True if the index can answer queries, false otherwise
+     */
+    public boolean isReady( )
+    {
+        return _bReady;
+    }
+
+    /**
+     * Load the index in background, if it is enabled
+     */
+    public synchronized void init( )
+    {
+        if ( !_bEnabled || _loader != null )
+        {
+            return;
+        }
+
+        _loader = Executors.newSingleThreadExecutor( runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        _loader.execute( this::load );
+    }
+
+    /**
+     * Drop the index and load it again in background, for instance when subscriptions were written without knowing which ones. Callers must query the
+     * database until it is loaded.
+     */
+    public synchronized void reload( )
+    {
+        if ( _loader == null )
+        {
+            return;
+        }
+
+        _bReady = false;
+        _loader.execute( this::load );
+    }
+
+    /**
+     * Stop the loader of the index. Callers query the database if the index was not loaded yet.
+     */
+    public synchronized void shutdown( )
+    {
+        if ( _loader != null )
+        {
+            _loader.shutdownNow( );
+            _loader = null;
+        }
+    }
+
+    /**
+     * Load every subscription in the index
+     */
+    private void load( )
+    {
+        long lStart = System.currentTimeMillis( );
+        _bLoading = true;
+        _bReady = false;
+
+        // Subscriptions indexed from now on are recorded or read again by the loader
+        _mapEntries.clear( );
+        _mapIdsByResource.clear( );
+        _mapIdsByUser.clear( );
+
+        try
+        {
+            IdBuffer loadedIds = new IdBuffer( );
+            List<IndexEntry> listLoadedEntries = new ArrayList<>( );
+
+            SubscriptionService.getInstance( ).forEachSubscription( new SubscriptionFilter( ), subscription -> {
+                loadedIds.add( subscription.getIdSubscription( ) );
+                listLoadedEntries.add( newEntry( subscription ) );
+            } );
+
+            publish( loadedIds, listLoadedEntries );
+
+            // Subscriptions removed while the table was read may have been published by the loader
+            for ( Integer nIdSubscription : _setRemovedWhileLoading )
+            {
+                removeEntry( nIdSubscription );
+            }
+            for ( SubscriptionFilter filter : _queueFiltersRemovedWhileLoading )
+            {
+                for ( int nIndex = 0; nIndex < loadedIds._nSize; nIndex++ )
+                {
+                    int nIdSubscription = loadedIds._ids [nIndex];
+                    IndexEntry entry = listLoadedEntries.get( nIndex );
+
+                    // Only the loaded version is removed, not a subscription indexed since then
+                    if ( _mapEntries.get( nIdSubscription ) == entry && entry.matches( nIdSubscription, filter ) )
+                    {
+                        removeEntry( nIdSubscription );
+                    }
+                }
+            }
+            _bReady = true;
+            AppLogService.info( "Subscription index loaded : " + _mapEntries.size( ) + " subscriptions in " + ( System.currentTimeMillis( ) - lStart ) + " ms" );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Unable to load the subscription index", e );
+        }
+        finally
+        {
+            _bLoading = false;
+            _setRemovedWhileLoading.clear( );
+            _queueFiltersRemovedWhileLoading.clear( );
+        }
+    }
+
+    /**
+     * Publish the loaded subscriptions in the index. Subscriptions removed or indexed since they were loaded are skipped, and the ids of each resource and
+     * user are sorted once, then merged with the ids indexed while loading.
+     * 
+     * @param loadedIds
+     *            The ids of the loaded subscriptions
+     * @param listLoadedEntries
+     *            The entries of the loaded subscriptions, in the order of their ids
+     */
+    private void publish( IdBuffer loadedIds, List<IndexEntry> listLoadedEntries )
+    {
+        Map<ResourceKey, IdBuffer> mapIdsByResource = new HashMap<>( );
+        Map<String, IdBuffer> mapIdsByUser = new HashMap<>( );
+
+        for ( int nIndex = 0; nIndex < loadedIds._nSize; nIndex++ )
+        {
+            int nIdSubscription = loadedIds._ids [nIndex];
+            IndexEntry entry = listLoadedEntries.get( nIndex );
+
+            if ( !_setRemovedWhileLoading.contains( nIdSubscription ) && _mapEntries.putIfAbsent( nIdSubscription, entry ) == null )
+            {
+                mapIdsByResource.computeIfAbsent( entry._resourceKey, key -> new IdBuffer( ) ).add( nIdSubscription );
+                mapIdsByUser.computeIfAbsent( entry._strUserId, key -> new IdBuffer( ) ).add( nIdSubscription );
+            }
+        }
+
+        for ( Map.Entry<ResourceKey, IdBuffer> entry : mapIdsByResource.entrySet( ) )
+        {
+            int [ ] loaded = entry.getValue( ).toSortedArray( );
+            _mapIdsByResource.merge( entry.getKey( ), loaded, SubscriptionIndexService::merge );
+        }
+        for ( Map.Entry<String, IdBuffer> entry : mapIdsByUser.entrySet( ) )
+        {
+            int [ ] loaded = entry.getValue( ).toSortedArray( );
+            _mapIdsByUser.merge( entry.getKey( ), loaded, SubscriptionIndexService::merge );
+        }
+    }
+
+    /**
+     * Add a subscription to the index
+     * 
+     * @param subscription
+     *            The created subscription
+     */
+    public void add( Subscription subscription )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        int nIdSubscription = subscription.getIdSubscription( );
+        IndexEntry entry = newEntry( subscription );
+
+        if ( _mapEntries.putIfAbsent( nIdSubscription, entry ) == null )
+        {
+            _mapIdsByResource.compute( entry._resourceKey, ( key, ids ) -> insert( ids, nIdSubscription ) );
+            _mapIdsByUser.compute( entry._strUserId, ( key, ids ) -> insert( ids, nIdSubscription ) );
+        }
+    }
+
+    /**
+     * Remove a subscription from the index
+     * 
+     * @param nIdSubscription
+     *            The id of the removed subscription
+     */
+    public void remove( int nIdSubscription )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        if ( _bLoading )
+        {
+            _setRemovedWhileLoading.add( nIdSubscription );
+        }
+
+        removeEntry( nIdSubscription );
+    }
+
+    /**
+     * Replace a subscription in the index by its updated version
+     * 
+     * @param subscription
+     *            The updated subscription
+     */
+    public void update( Subscription subscription )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        removeEntry( subscription.getIdSubscription( ) );
+        add( subscription );
+    }
+
+    /**
+     * Read a subscription again from the database, then index it if it still exists or remove it from the index otherwise. Used for the subscriptions written
+     * by other nodes.
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     */
+    public void refresh( int nIdSubscription )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        Subscription subscription = SubscriptionService.getInstance( ).loadSubscription( nIdSubscription );
+
+        if ( subscription != null )
+        {
+            update( subscription );
+        }
+        else
+        {
+            remove( nIdSubscription );
+        }
+    }
+
+    /**
+     * Remove the entry of a subscription from the index
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     */
+    private void removeEntry( int nIdSubscription )
+    {
+        IndexEntry entry = _mapEntries.remove( nIdSubscription );
+
+        if ( entry != null )
+        {
+            _mapIdsByResource.computeIfPresent( entry._resourceKey, ( key, ids ) -> delete( ids, nIdSubscription ) );
+            _mapIdsByUser.computeIfPresent( entry._strUserId, ( key, ids ) -> delete( ids, nIdSubscription ) );
+        }
+    }
+
+    /**
+     * Remove every subscription matching a filter from the index
+     * 
+     * @param filter
+     *            The filter
+     */
+    public void removeMatching( SubscriptionFilter filter )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        if ( _bLoading )
+        {
+            // Recorded before the scan, so that the loader applies it to the subscriptions it has not published yet
+            SubscriptionFilter filterCopy = new SubscriptionFilter( filter.getUserId( ), filter.getSubscriptionProvider( ), filter.getSubscriptionKey( ),
+                    filter.getIdSubscribedResource( ) );
+            filterCopy.setIdSubscriptionAfter( filter.getIdSubscriptionAfter( ) );
+            filterCopy.setIdSubscriptionBefore( filter.getIdSubscriptionBefore( ) );
+            _queueFiltersRemovedWhileLoading.add( filterCopy );
+        }
+
+        for ( Map.Entry<Integer, IndexEntry> entry : _mapEntries.entrySet( ) )
+        {
+            if ( entry.getValue( ).matches( entry.getKey( ), filter ) )
+            {
+                remove( entry.getKey( ) );
+            }
+        }
+    }
+
+    /**
+     * Get the ids of the subscriptions to a resource
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return The sorted ids of the subscriptions. The array must not be modified
+     */
+    public int [ ] getSubscriptionIds( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        int [ ] ids = _mapIdsByResource.get( new ResourceKey( strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource ) );
+
+        return ( ids != null ) ? ids : EMPTY;
+    }
+
+    /**
+     * Get the ids of the subscriptions of a user
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @return The sorted ids of the subscriptions. The array must not be modified
+     */
+    public int [ ] getSubscriptionIds( String strUserId )
+    {
+        int [ ] ids = _mapIdsByUser.get( strUserId );
+
+        return ( ids != null ) ? ids : EMPTY;
+    }
+
+    /**
+     * Get the ids of the users subscribed to a resource
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return The distinct ids of the users
+     */
+    public Collection<String> getUserIds( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        int [ ] ids = getSubscriptionIds( strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource );
+        Set<String> setUserIds = new LinkedHashSet<>( ids.length );
+
+        for ( int nIdSubscription : ids )
+        {
+            IndexEntry entry = _mapEntries.get( nIdSubscription );
+
+            if ( entry != null )
+            {
+                setUserIds.add( entry._strUserId );
+            }
+        }
+
+        return setUserIds;
+    }
+
+    /**
+     * Create the index entry of a subscription
+     * 
+     * @param subscription
+     *            The subscription
+     * @return The index entry
+     */
+    private static IndexEntry newEntry( Subscription subscription )
+    {
+        return new IndexEntry( subscription.getUserId( ),
+                new ResourceKey( subscription.getSubscriptionProvider( ), subscription.getSubscriptionKey( ), subscription.getIdSubscribedResource( ) ) );
+    }
+
+    /**
+     * Merge two sorted arrays of distinct ids
+     * 
+     * @param ids
+     *            The first sorted array
+     * @param otherIds
+     *            The second sorted array
+     * @return The new sorted array, without duplicates
+     */
+    private static int [ ] merge( int [ ] ids, int [ ] otherIds )
+    {
+        int [ ] mergedIds = new int [ ids.length + otherIds.length];
+        int nIndex = 0;
+        int nOtherIndex = 0;
+        int nSize = 0;
+
+        while ( nIndex < ids.length || nOtherIndex < otherIds.length )
+        {
+            if ( nOtherIndex >= otherIds.length || ( nIndex < ids.length && ids [nIndex] < otherIds [nOtherIndex] ) )
+            {
+                mergedIds [nSize++] = ids [nIndex++];
+            }
+            else if ( nIndex >= ids.length || otherIds [nOtherIndex] < ids [nIndex] )
+            {
+                mergedIds [nSize++] = otherIds [nOtherIndex++];
+            }
+            else
+            {
+                mergedIds [nSize++] = ids [nIndex++];
+                nOtherIndex++;
+            }
+        }
+
+        return ( nSize == mergedIds.length ) ? mergedIds : Arrays.copyOf( mergedIds, nSize );
+    }
+
+    /**
+     * Copy a sorted array with an additional id
+     * 
+     * @param ids
+     *            The sorted array, or null
+     * @param nId
+     *            The id to insert
+     * @return The new sorted array
+     */
+    private static int [ ] insert( int [ ] ids, int nId )
+    {
+        if ( ids == null )
+        {
+            return new int [ ] {
+                    nId
+            };
+        }
+
+        int nPosition = Arrays.binarySearch( ids, nId );
+        if ( nPosition >= 0 )
+        {
+            return ids;
+        }
+
+        nPosition = -nPosition - 1;
+        int [ ] newIds = new int [ ids.length + 1];
+        System.arraycopy( ids, 0, newIds, 0, nPosition );
+        newIds [nPosition] = nId;
+        System.arraycopy( ids, nPosition, newIds, nPosition + 1, ids.length - nPosition );
+
+        return newIds;
+    }
+
+    /**
+     * Copy a sorted array without an id
+     * 
+     * @param ids
+     *            The sorted array
+     * @param nId
+     *            The id to delete
+     * @return The new sorted array, or null if it is empty so that its entry is removed from the map
+     */
+    private static int [ ] delete( int [ ] ids, int nId )
+    {
+        int nPosition = Arrays.binarySearch( ids, nId );
+        if ( nPosition < 0 )
+        {
+            return ids;
+        }
+        if ( ids.length == 1 )
+        {
+            return null;
+        }
+
+        int [ ] newIds = new int [ ids.length - 1];
+        System.arraycopy( ids, 0, newIds, 0, nPosition );
+        System.arraycopy( ids, nPosition + 1, newIds, nPosition, ids.length - nPosition - 1 );
+
+        return newIds;
+    }
+
+    /**
+     * Growable array of ids, used while loading
+     */
+    private static final class IdBuffer
+    {
+        private int [ ] _ids = new int [ 4];
+        private int _nSize;
+
+        /**
+         * Append an id
+         * 
+         * @param nId
+         *            The id
+         */
+        void add( int nId )
+        {
+            if ( _nSize == _ids.length )
+            {
+                _ids = Arrays.copyOf( _ids, _nSize * 2 );
+            }
+            _ids [_nSize++] = nId;
+        }
+
+        /**
+         * Get the ids as a sorted array
+         * 
+         * @return The sorted array
+         */
+        int [ ] toSortedArray( )
+        {
+            int [ ] ids = Arrays.copyOf( _ids, _nSize );
+            Arrays.sort( ids );
+
+            return ids;
+        }
+    }
+
+    /**
+     * Subscribed resource : provider, subscription key and resource id
+     */
+    private static final class ResourceKey
+    {
+        private final String _strProvider;
+        private final String _strKey;
+        private final String _strIdResource;
+        private final int _nHashCode;
+
+        /**
+         * Constructor
+         * 
+         * @param strProvider
+         *            The subscription provider
+         * @param strKey
+         *            The subscription key
+         * @param strIdResource
+         *            The id of the subscribed resource
+         */
+        ResourceKey( String strProvider, String strKey, String strIdResource )
+        {
+            _strProvider = strProvider;
+            _strKey = strKey;
+            _strIdResource = strIdResource;
+            _nHashCode = Objects.hash( strProvider, strKey, strIdResource );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode( )
+        {
+            return _nHashCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals( Object object )
+        {
+            if ( this == object )
+            {
+                return true;
+            }
+            if ( !( object instanceof ResourceKey ) )
+            {
+                return false;
+            }
+
+            ResourceKey other = (ResourceKey) object;
+
+            return Objects.equals( _strIdResource, other._strIdResource ) && Objects.equals( _strKey, other._strKey )
+                    && Objects.equals( _strProvider, other._strProvider );
+        }
+    }
+
+    /**
+     * User and resource of an indexed subscription
+     */
+    private static final class IndexEntry
+    {
+        private final String _strUserId;
+        private final ResourceKey _resourceKey;
+
+        /**
+         * Constructor
+         * 
+         * @param strUserId
+         *            The id of the user
+         * @param resourceKey
+         *            The subscribed resource
+         */
+        IndexEntry( String strUserId, ResourceKey resourceKey )
+        {
+            _strUserId = strUserId;
+            _resourceKey = resourceKey;
+        }
+
+        /**
+         * Check if the subscription matches a filter, with the semantic of the DAO
+         * 
+         * @param nIdSubscription
+         *            The id of the subscription
+         * @param filter
+         *            The filter
+         * @return True if the subscription matches the filter, false otherwise
+         */
+        boolean matches( int nIdSubscription, SubscriptionFilter filter )
+        {
+            return ( StringUtils.isEmpty( filter.getUserId( ) ) || filter.getUserId( ).equals( _strUserId ) )
+                    && ( filter.getSubscriptionProvider( ) == null || filter.getSubscriptionProvider( ).equals( _resourceKey._strProvider ) )
+                    && ( filter.getSubscriptionKey( ) == null || filter.getSubscriptionKey( ).equals( _resourceKey._strKey ) )
+                    && ( filter.getIdSubscribedResource( ) == null || filter.getIdSubscribedResource( ).equals( _resourceKey._strIdResource ) )
+                    && ( filter.getIdSubscriptionAfter( ) <= 0 || nIdSubscription > filter.getIdSubscriptionAfter( ) )
+                    && ( filter.getIdSubscriptionBefore( ) <= 0 || nIdSubscription < filter.getIdSubscriptionBefore( ) );
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Metrics of the subscription operations : counters of writes, latencies of queries by filter shape, latencies of provider callbacks and cache hit ratios.
+ * <br />
+ * Metrics are disabled by default. When they are disabled, {@link #startTimer()} returns 0 and nothing is recorded, so instrumented code only pays a field
+ * read.
+ */
+public final class SubscriptionMetrics implements SubscriptionMetricsMBean
+{
+    public static final String TIMER_LOAD = "load";
+    public static final String TIMER_EXISTS = "exists";
+    public static final String TIMER_COUNT = "count";
+    public static final String TIMER_PREFIX_FIND_BY_FILTER = "findByFilter.";
+    public static final String TIMER_PREFIX_PROVIDER = "provider.";
+    public static final String COUNTER_SUBSCRIPTION_CACHE_HIT = "cache.subscription.hit";
+    public static final String COUNTER_SUBSCRIPTION_CACHE_MISS = "cache.subscription.miss";
+    public static final String COUNTER_SUBSCRIBER_CACHE_HIT = "cache.subscriber.hit";
+    public static final String COUNTER_SUBSCRIBER_CACHE_MISS = "cache.subscriber.miss";
+    public static final String COUNTER_REMOVAL_NOTIFICATION_SENT = "removalNotification.sent";
+    public static final String COUNTER_REMOVAL_NOTIFICATION_FAILED = "removalNotification.failed";
+    public static final String COUNTER_REMOVAL_NOTIFICATION_DROPPED = "removalNotification.dropped";
+    public static final String COUNTER_EVENT_DROPPED = "eventBus.dropped";
+    public static final String COUNTER_BLOOM_FILTER_NEGATIVE = "bloomFilter.negative";
+    public static final String COUNTER_BLOOM_FILTER_TRUE_POSITIVE = "bloomFilter.truePositive";
+    public static final String COUNTER_BLOOM_FILTER_FALSE_POSITIVE = "bloomFilter.falsePositive";
+    public static final String COUNTER_CACHE_INVALIDATION_FAILED = "cacheInvalidation.failed";
+    public static final String COUNTER_FAN_OUT_NOTIFIED = "fanOut.notified";
+    public static final String COUNTER_FAN_OUT_FAILED = "fanOut.failed";
+    public static final String COUNTER_FAN_OUT_DROPPED = "fanOut.dropped";
+
+    private static final String COUNTER_INSERT = "insert";
+    private static final String COUNTER_DELETE = "delete";
+    private static final String PROPERTY_ENABLED = "subscribe.metrics.enabled";
+    private static final String MBEAN_NAME = "fr.paris.lutece.plugins.subscribe:type=SubscriptionMetrics";
+    private static final String [ ] FILTER_SHAPES = buildFilterShapes( );
+
+    private static SubscriptionMetrics _instance = new SubscriptionMetrics( );
+
+    private final boolean _bEnabled;
+    private final ConcurrentMap<String, LongAdder> _mapCounters = new ConcurrentHashMap<>( );
+    private final ConcurrentMap<String, LatencyHistogram> _mapTimers = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionMetrics( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+    }
+
+    /**
+     * Get the instance of the metrics
+     * 
+     * @return The instance of the metrics
+     */
+    public static SubscriptionMetrics getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, if they are enabled
+     */
+    public void register( )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        try
+        {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer( );
+            ObjectName objectName = new ObjectName( MBEAN_NAME );
+
+            if ( !mbeanServer.isRegistered( objectName ) )
+            {
+                mbeanServer.registerMBean( this, objectName );
+            }
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "Unable to register the subscription metrics MBean", e );
+        }
+    }
+
+    /**
+     * Check if metrics are enabled
+     * 
+     * @return True if metrics are enabled, false otherwise
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Start a timer
+     * 
+     * @return The start time to give to {@link #stopTimer(String, long)}, or 0 if metrics are disabled
+     */
+    public long startTimer( )
+    {
+        return _bEnabled ? System.nanoTime( ) : 0L;
+    }
+
+    /**
+     * Stop a timer and record its latency
+     * 
+     * @param strTimer
+     *            The name of the timer
+     * @param lStart
+     *            The value returned by {@link #startTimer()}
+     */
+    public void stopTimer( String strTimer, long lStart )
+    {
+        if ( lStart != 0L )
+        {
+            _mapTimers.computeIfAbsent( strTimer, strName -> new LatencyHistogram( ) ).record( System.nanoTime( ) - lStart );
+        }
+    }
+
+    /**
+     * Stop the timer of a findByFilter call, and record its latency under the shape of the filter
+     * 
+     * @param filter
+     *            The filter
+     * @param lStart
+     *            The value returned by {@link #startTimer()}
+     */
+    public void stopFindByFilterTimer( SubscriptionFilter filter, long lStart )
+    {
+        if ( lStart != 0L )
+        {
+            stopTimer( FILTER_SHAPES [getFilterShape( filter )], lStart );
+        }
+    }
+
+    /**
+     * Stop the timer of a provider callback
+     * 
+     * @param strProvider
+     *            The name of the provider
+     * @param strCallback
+     *            The name of the callback
+     * @param lStart
+     *            The value returned by {@link #startTimer()}
+     */
+    public void stopProviderTimer( String strProvider, String strCallback, long lStart )
+    {
+        if ( lStart != 0L )
+        {
+            stopTimer( TIMER_PREFIX_PROVIDER + strProvider + "." + strCallback, lStart );
+        }
+    }
+
+    /**
+     * Increment a counter
+     * 
+     * @param strCounter
+     *            The name of the counter
+     */
+    public void increment( String strCounter )
+    {
+        add( strCounter, 1L );
+    }
+
+    /**
+     * Add a value to a counter
+     * 
+     * @param strCounter
+     *            The name of the counter
+     * @param lValue
+     *            The value to add
+     */
+    public void add( String strCounter, long lValue )
+    {
+        if ( _bEnabled )
+        {
+            _mapCounters.computeIfAbsent( strCounter, strName -> new LongAdder( ) ).add( lValue );
+        }
+    }
+
+    /**
+     * Count created subscriptions
+     * 
+     * @param nCount
+     *            The number of created subscriptions
+     */
+    public void countInserts( int nCount )
+    {
+        add( COUNTER_INSERT, nCount );
+    }
+
+    /**
+     * Count removed subscriptions
+     * 
+     * @param nCount
+     *            The number of removed subscriptions
+     */
+    public void countDeletes( int nCount )
+    {
+        add( COUNTER_DELETE, nCount );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInsertCount( )
+    {
+        return getCounter( COUNTER_INSERT );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDeleteCount( )
+    {
+        return getCounter( COUNTER_DELETE );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getSubscriptionCacheHitRatio( )
+    {
+        return getRatio( COUNTER_SUBSCRIPTION_CACHE_HIT, COUNTER_SUBSCRIPTION_CACHE_MISS );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getSubscriberCacheHitRatio( )
+    {
+        return getRatio( COUNTER_SUBSCRIBER_CACHE_HIT, COUNTER_SUBSCRIBER_CACHE_MISS );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getReport( )
+    {
+        StringBuilder sbReport = new StringBuilder( );
+
+        for ( Map.Entry<String, LongAdder> entry : new TreeMap<>( _mapCounters ).entrySet( ) )
+        {
+            sbReport.append( entry.getKey( ) ).append( ' ' ).append( entry.getValue( ).sum( ) ).append( '\n' );
+        }
+        sbReport.append( String.format( Locale.ROOT, "cache.subscription.hitRatio %.3f%n", getSubscriptionCacheHitRatio( ) ) );
+        sbReport.append( String.format( Locale.ROOT, "cache.subscriber.hitRatio %.3f%n", getSubscriberCacheHitRatio( ) ) );
+
+        for ( Map.Entry<String, LatencyHistogram> entry : new TreeMap<>( _mapTimers ).entrySet( ) )
+        {
+            LatencyHistogram histogram = entry.getValue( );
+            sbReport.append( String.format( Locale.ROOT, "%s count=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms%n", entry.getKey( ),
+                    histogram.getCount( ), histogram.getMeanMillis( ), histogram.getPercentileMillis( 50 ), histogram.getPercentileMillis( 95 ),
+                    histogram.getPercentileMillis( 99 ), histogram.getMaxMillis( ) ) );
+        }
+
+        return sbReport.toString( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset( )
+    {
+        _mapCounters.clear( );
+        _mapTimers.clear( );
+    }
+
+    /**
+     * Get the value of a counter
+     * 
+     * @param strCounter
+     *            The name of the counter
+     * @return The value of the counter
+     */
+    private long getCounter( String strCounter )
+    {
+        LongAdder counter = _mapCounters.get( strCounter );
+
+        return ( counter != null ) ? counter.sum( ) : 0L;
+    }
+
+    /**
+     * Get the ratio of hits
+     * 
+     * @param strHitCounter
+     *            The counter of hits
+     * @param strMissCounter
+     *            The counter of misses
+     * @return The ratio of hits, or 0 if nothing was counted
+     */
+    private double getRatio( String strHitCounter, String strMissCounter )
+    {
+        long lHits = getCounter( strHitCounter );
+        long lTotal = lHits + getCounter( strMissCounter );
+
+        return ( lTotal == 0 ) ? 0d : (double) lHits / lTotal;
+    }
+
+    /**
+     * Get the shape of a filter, as a bit mask of its criteria : user, provider, key and resource
+     * 
+     * @param filter
+     *            The filter
+     * @return The shape of the filter
+     */
+    private static int getFilterShape( SubscriptionFilter filter )
+    {
+        int nShape = 0;
+        if ( StringUtils.isNotEmpty( filter.getUserId( ) ) )
+        {
+            nShape |= 1;
+        }
+        if ( filter.getSubscriptionProvider( ) != null )
+        {
+            nShape |= 2;
+        }
+        if ( filter.getSubscriptionKey( ) != null )
+        {
+            nShape |= 4;
+        }
+        if ( filter.getIdSubscribedResource( ) != null )
+        {
+            nShape |= 8;
+        }
+
+        return nShape;
+    }
+
+    /**
+     * Build the timer names of the 16 filter shapes
+     * 
+     * @return The timer names, indexed by shape
+     */
+    private static String [ ] buildFilterShapes( )
+    {
+        String [ ] criteria = {
+                "user", "provider", "key", "resource"
+        };
+        String [ ] shapes = new String [ 16];
+
+        for ( int nShape = 0; nShape < shapes.length; nShape++ )
+        {
+            StringBuilder sbShape = new StringBuilder( TIMER_PREFIX_FIND_BY_FILTER );
+            for ( int i = 0; i < criteria.length; i++ )
+            {
+                if ( ( nShape & ( 1 << i ) ) != 0 )
+                {
+                    sbShape.append( ( sbShape.length( ) == TIMER_PREFIX_FIND_BY_FILTER.length( ) ) ? "" : "+" ).append( criteria [i] );
+                }
+            }
+            if ( nShape == 0 )
+            {
+                sbShape.append( "all" );
+            }
+            shapes [nShape] = sbShape.toString( );
+        }
+
+        return shapes;
+    }
+}
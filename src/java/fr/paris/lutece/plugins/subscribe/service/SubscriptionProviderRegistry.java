@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.portal.service.plugin.PluginEvent;
+import fr.paris.lutece.portal.service.plugin.PluginEventListener;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of subscription providers, indexed by provider name.<br />
+ * The registry is built when the plugin is initialized, and is rebuilt each time a plugin is installed, uninstalled or changes its pool, since the providers
+ * available in the Spring context depend on the enabled plugins.
+ */
+public final class SubscriptionProviderRegistry implements PluginEventListener
+{
+    private static SubscriptionProviderRegistry _instance = new SubscriptionProviderRegistry( );
+
+    private volatile Map<String, ISubscriptionProviderService> _mapProviders;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionProviderRegistry( )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Get the instance of the registry
+     * 
+     * @return The instance of the registry
+     */
+    public static SubscriptionProviderRegistry getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Get a provider from its name
+     * 
+     * @param strProviderName
+     *            The name of the provider
+     * @return The provider, or null if no provider has the given name
+     */
+    public ISubscriptionProviderService getProvider( String strProviderName )
+    {
+        if ( strProviderName == null )
+        {
+            return null;
+        }
+
+        return getProviders( ).get( strProviderName );
+    }
+
+    /**
+     * Get every registered provider
+     * 
+     * @return The registered providers
+     */
+    public Collection<ISubscriptionProviderService> getProviderList( )
+    {
+        return getProviders( ).values( );
+    }
+
+    /**
+     * Rebuild the registry from the providers declared in the Spring context
+     */
+    public void refresh( )
+    {
+        List<ISubscriptionProviderService> listProviders = SpringContextService.getBeansOfType( ISubscriptionProviderService.class );
+        Map<String, ISubscriptionProviderService> mapProviders = new ConcurrentHashMap<>( );
+
+        for ( ISubscriptionProviderService provider : listProviders )
+        {
+            if ( provider.getProviderName( ) != null )
+            {
+                mapProviders.putIfAbsent( provider.getProviderName( ), provider );
+            }
+        }
+
+        _mapProviders = mapProviders;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPluginEvent( PluginEvent event )
+    {
+        refresh( );
+    }
+
+    /**
+     * Get the map of providers, building it if the registry has not been initialized yet
+     * 
+     * @return The map of providers
+     */
+    private Map<String, ISubscriptionProviderService> getProviders( )
+    {
+        Map<String, ISubscriptionProviderService> mapProviders = _mapProviders;
+
+        if ( mapProviders == null )
+        {
+            refresh( );
+            mapProviders = _mapProviders;
+        }
+
+        return mapProviders;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Router of subscription reads between the pool of the plugin and an optional read-only pool, such as a pool of replicas.<br />
+ * Writes always use the pool of the plugin. Reads use the read-only pool, unless they may depend on a recent write of this node : after a subscription is
+ * written, reads of its id, of the subscriptions of its user and of the subscribers of its resource use the pool of the plugin for
+ * <code>subscribe.readPool.stickiness</code> seconds, so that a user always sees their own changes despite the replication lag. The stickiness must therefore
+ * exceed the maximum lag of the replicas.<br />
+ * Reads from the read-only pool may be stale, so they are never put in the subscription cache : only reads from the pool of the plugin are cached, see
+ * {@link #isReadOnly(Plugin)}.
+ */
+public final class SubscriptionReadRouter
+{
+    private static final String PROPERTY_READ_POOL = "subscribe.readPool";
+    private static final String PROPERTY_STICKINESS = "subscribe.readPool.stickiness";
+    private static final long DEFAULT_STICKINESS = 5L;
+    private static final int PRUNE_THRESHOLD = 10000;
+    private static final String KEY_PREFIX_ID = "id:";
+    private static final String KEY_PREFIX_USER = "user:";
+    private static final String KEY_PREFIX_RESOURCE = "resource:";
+    private static final String KEY_SEPARATOR = "|";
+
+    private static SubscriptionReadRouter _instance = new SubscriptionReadRouter( );
+
+    private final String _strReadPool;
+    private final long _lStickiness;
+    private final ConcurrentMap<String, Long> _mapLastWrites = new ConcurrentHashMap<>( );
+    private volatile long _lLastGlobalWrite;
+    private volatile long _lLastWrite;
+    private volatile Plugin _readPlugin;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionReadRouter( )
+    {
+        _strReadPool = AppPropertiesService.getProperty( PROPERTY_READ_POOL );
+        _lStickiness = TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_STICKINESS, DEFAULT_STICKINESS ) );
+    }
+
+    /**
+     * Get the instance of the router
+     * 
+     * @return The instance of the router
+     */
+    public static SubscriptionReadRouter getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Check if a read-only pool is configured
+     * 
+     * @return True if reads may use a read-only pool, false otherwise
+     */
+    public boolean isEnabled( )
+    {
+        return StringUtils.isNotBlank( _strReadPool );
+    }
+
+    /**
+     * Get the plugin whose pool must be used to read a subscription
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @return The plugin to give to the DAO
+     */
+    public Plugin getPluginForRead( int nIdSubscription )
+    {
+        if ( !isEnabled( ) || isRecentlyWritten( KEY_PREFIX_ID + nIdSubscription ) )
+        {
+            return SubscribePlugin.getPlugin( );
+        }
+
+        return getReadPlugin( );
+    }
+
+    /**
+     * Get the plugin whose pool must be used to read the subscriptions matching a filter
+     * 
+     * @param filter
+     *            The filter
+     * @return The plugin to give to the DAO
+     */
+    public Plugin getPluginForRead( SubscriptionFilter filter )
+    {
+        if ( !isEnabled( ) )
+        {
+            return SubscribePlugin.getPlugin( );
+        }
+
+        boolean bHasUser = StringUtils.isNotEmpty( filter.getUserId( ) );
+        int nResourceCriteria = ( filter.getSubscriptionProvider( ) != null ? 1 : 0 ) + ( filter.getSubscriptionKey( ) != null ? 1 : 0 )
+                + ( filter.getIdSubscribedResource( ) != null ? 1 : 0 );
+        boolean bRecentlyWritten;
+
+        if ( nResourceCriteria == 3 )
+        {
+            bRecentlyWritten = isRecentlyWritten( getResourceKey( filter.getSubscriptionProvider( ), filter.getSubscriptionKey( ),
+                    filter.getIdSubscribedResource( ) ) ) || ( bHasUser && isRecentlyWritten( getUserKey( filter.getUserId( ) ) ) );
+        }
+        else if ( bHasUser )
+        {
+            bRecentlyWritten = isRecentlyWritten( getUserKey( filter.getUserId( ) ) );
+        }
+        else
+        {
+            // Filters on several resources may match any written subscription
+            bRecentlyWritten = isRecentlyWritten( _lLastWrite );
+        }
+
+        return bRecentlyWritten ? SubscribePlugin.getPlugin( ) : getReadPlugin( );
+    }
+
+    /**
+     * Check if a plugin returned by this router reads from the read-only pool. Results read from it may be stale and must not be cached.
+     * 
+     * @param plugin
+     *            The plugin returned by this router
+     * @return True if the plugin uses the read-only pool, false if it uses the pool of the plugin
+     */
+    public boolean isReadOnly( Plugin plugin )
+    {
+        return plugin != null && plugin == _readPlugin;
+    }
+
+    /**
+     * Get the plugin whose pool must be used for reads that do not need the latest writes, such as full loads in background
+     * 
+     * @return The plugin to give to the DAO
+     */
+    public Plugin getPluginForBulkRead( )
+    {
+        return isEnabled( ) ? getReadPlugin( ) : SubscribePlugin.getPlugin( );
+    }
+
+    /**
+     * Record that a subscription was written on this node
+     * 
+     * @param subscription
+     *            The created, updated or removed subscription
+     */
+    public void markWritten( Subscription subscription )
+    {
+        if ( !isEnabled( ) )
+        {
+            return;
+        }
+
+        Long lNow = System.currentTimeMillis( );
+        _lLastWrite = lNow;
+        _mapLastWrites.put( KEY_PREFIX_ID + subscription.getIdSubscription( ), lNow );
+        _mapLastWrites.put( getUserKey( subscription.getUserId( ) ), lNow );
+        _mapLastWrites.put(
+                getResourceKey( subscription.getSubscriptionProvider( ), subscription.getSubscriptionKey( ), subscription.getIdSubscribedResource( ) ), lNow );
+
+        if ( _mapLastWrites.size( ) > PRUNE_THRESHOLD )
+        {
+            prune( lNow );
+        }
+    }
+
+    /**
+     * Record that subscriptions were written on this node without knowing which ones, for instance by a removal by filter. Every read uses the pool of the
+     * plugin during the stickiness delay.
+     */
+    public void markAllWritten( )
+    {
+        if ( isEnabled( ) )
+        {
+            _lLastGlobalWrite = System.currentTimeMillis( );
+        }
+    }
+
+    /**
+     * Check if a key was written during the stickiness delay
+     * 
+     * @param strKey
+     *            The key
+     * @return True if the key was written recently
+     */
+    private boolean isRecentlyWritten( String strKey )
+    {
+        Long lLastWrite = _mapLastWrites.get( strKey );
+
+        return isRecentlyWritten( ( lLastWrite != null ) ? lLastWrite : 0L );
+    }
+
+    /**
+     * Check if a write happened during the stickiness delay. Writes of unknown subscriptions are taken into account.
+     * 
+     * @param lLastWrite
+     *            The date of the write
+     * @return True if the write, or a write of unknown subscriptions, happened recently
+     */
+    private boolean isRecentlyWritten( long lLastWrite )
+    {
+        long lLimit = System.currentTimeMillis( ) - _lStickiness;
+
+        return lLastWrite > lLimit || _lLastGlobalWrite > lLimit;
+    }
+
+    /**
+     * Remove the writes older than the stickiness delay
+     * 
+     * @param lNow
+     *            The current time
+     */
+    private void prune( long lNow )
+    {
+        long lLimit = lNow - _lStickiness;
+        _mapLastWrites.values( ).removeIf( lLastWrite -> lLastWrite <= lLimit );
+    }
+
+    /**
+     * Get the plugin bound to the read-only pool, creating it on first use
+     * 
+     * @return The plugin bound to the read-only pool
+     */
+    private Plugin getReadPlugin( )
+    {
+        Plugin readPlugin = _readPlugin;
+
+        if ( readPlugin == null )
+        {
+            synchronized( this )
+            {
+                readPlugin = _readPlugin;
+                if ( readPlugin == null )
+                {
+                    readPlugin = new SubscribePlugin( );
+                    readPlugin.initConnectionService( _strReadPool );
+                    _readPlugin = readPlugin;
+                    AppLogService.info( "Subscription reads use the pool " + _strReadPool );
+                }
+            }
+        }
+
+        return readPlugin;
+    }
+
+    /**
+     * Get the key of the writes of a user
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @return The key
+     */
+    private static String getUserKey( String strUserId )
+    {
+        return KEY_PREFIX_USER + strUserId;
+    }
+
+    /**
+     * Get the key of the writes of a subscribed resource
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return The key
+     */
+    private static String getResourceKey( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        return KEY_PREFIX_RESOURCE + strSubscriptionProvider + KEY_SEPARATOR + strSubscriptionKey + KEY_SEPARATOR + strIdSubscribedResource;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.ISubscriptionRemovalNotificationDAO;
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionRemovalNotification;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service that notifies providers of removed subscriptions in background.<br />
+ * Removals with notification store a pending notification in the same transaction as the deletion of the subscription. The
+ * {@link SubscriptionRemovalNotificationDaemon daemon} then sends the pending notifications by batches, with one call per provider. Notifications that fail
+ * are retried later with an exponential delay, until the maximum number of attempts is reached. Each notification is claimed before it is sent so that two
+ * nodes do not send it at the same time, but a provider may still receive a notification twice if a node stops while sending it.
+ */
+public final class SubscriptionRemovalNotificationService
+{
+    private static final String PROPERTY_BATCH_SIZE = "subscribe.removalNotification.batchSize";
+    private static final String PROPERTY_MAX_BATCHES = "subscribe.removalNotification.maxBatchesPerRun";
+    private static final String PROPERTY_MAX_ATTEMPTS = "subscribe.removalNotification.maxAttempts";
+    private static final String PROPERTY_RETRY_DELAY = "subscribe.removalNotification.retryDelay";
+    private static final String PROPERTY_MAX_RETRY_DELAY = "subscribe.removalNotification.maxRetryDelay";
+    private static final String PROPERTY_LEASE = "subscribe.removalNotification.lease";
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_MAX_BATCHES = 10;
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final long DEFAULT_RETRY_DELAY = 60L;
+    private static final long DEFAULT_MAX_RETRY_DELAY = 3600L;
+    private static final long DEFAULT_LEASE = 300L;
+    private static final String CALLBACK_NOTIFY_REMOVAL = "notifySubscriptionsRemoval";
+
+    private static SubscriptionRemovalNotificationService _instance = new SubscriptionRemovalNotificationService( );
+    private ISubscriptionRemovalNotificationDAO _dao = SpringContextService.getBean( "subscribe.subscriptionRemovalNotificationDAO" );
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionRemovalNotificationService( )
+    {
+        // Do nothing
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return The instance of the service
+     */
+    public static SubscriptionRemovalNotificationService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Store a pending notification for each removed subscription. This method must be called in the transaction that removes the subscriptions.
+     * 
+     * @param collectionSubscriptions
+     *            The removed subscriptions
+     */
+    public void enqueue( Collection<Subscription> collectionSubscriptions )
+    {
+        _dao.insert( collectionSubscriptions, new Timestamp( System.currentTimeMillis( ) ), SubscribePlugin.getPlugin( ) );
+    }
+
+    /**
+     * Store a pending notification for each subscription that matches a filter. This method must be called in the transaction that removes the subscriptions,
+     * before they are removed.
+     * 
+     * @param filter
+     *            The filter of the removed subscriptions
+     * @return The number of pending notifications stored
+     */
+    public int enqueue( SubscriptionFilter filter )
+    {
+        return _dao.insertByFilter( filter, new Timestamp( System.currentTimeMillis( ) ), SubscribePlugin.getPlugin( ) );
+    }
+
+    /**
+     * Send the pending notifications to the providers. The notifications of a batch that belong to the same provider are sent with a single call.
+     * 
+     * @return The number of notifications sent
+     */
+    public int processPendingNotifications( )
+    {
+        Plugin plugin = SubscribePlugin.getPlugin( );
+        int nBatchSize = AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE );
+        int nMaxBatches = AppPropertiesService.getPropertyInt( PROPERTY_MAX_BATCHES, DEFAULT_MAX_BATCHES );
+        int nSent = 0;
+
+        for ( int nBatch = 0; nBatch < nMaxBatches; nBatch++ )
+        {
+            long lNow = System.currentTimeMillis( );
+            List<SubscriptionRemovalNotification> listNotifications = _dao.selectPending( new Timestamp( lNow ), nBatchSize, plugin );
+            Timestamp dateLeaseEnd = new Timestamp( lNow + TimeUnit.SECONDS.toMillis( AppPropertiesService.getPropertyLong( PROPERTY_LEASE, DEFAULT_LEASE ) ) );
+            Map<String, List<SubscriptionRemovalNotification>> mapClaimedByProvider = new LinkedHashMap<>( );
+
+            for ( SubscriptionRemovalNotification notification : listNotifications )
+            {
+                if ( _dao.claim( notification, dateLeaseEnd, plugin ) )
+                {
+                    mapClaimedByProvider.computeIfAbsent( notification.getSubscription( ).getSubscriptionProvider( ), strProvider -> new ArrayList<>( ) )
+                            .add( notification );
+                }
+            }
+
+            List<Integer> listDone = new ArrayList<>( listNotifications.size( ) );
+
+            for ( Map.Entry<String, List<SubscriptionRemovalNotification>> entry : mapClaimedByProvider.entrySet( ) )
+            {
+                if ( send( entry.getKey( ), entry.getValue( ) ) )
+                {
+                    for ( SubscriptionRemovalNotification notification : entry.getValue( ) )
+                    {
+                        listDone.add( notification.getIdNotification( ) );
+                    }
+                    nSent += entry.getValue( ).size( );
+                }
+                else
+                {
+                    for ( SubscriptionRemovalNotification notification : entry.getValue( ) )
+                    {
+                        if ( notification.getNbAttempts( ) >= AppPropertiesService.getPropertyInt( PROPERTY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS ) )
+                        {
+                            AppLogService.error( "Giving up notifying the removal of subscription " + notification.getSubscription( ).getIdSubscription( )
+                                    + " to provider " + entry.getKey( ) + " after " + notification.getNbAttempts( ) + " attempts" );
+                            listDone.add( notification.getIdNotification( ) );
+                            SubscriptionMetrics.getInstance( ).increment( SubscriptionMetrics.COUNTER_REMOVAL_NOTIFICATION_DROPPED );
+                        }
+                        else
+                        {
+                            _dao.reschedule( notification.getIdNotification( ), getNextAttemptDate( notification.getNbAttempts( ) ), plugin );
+                        }
+                    }
+                }
+            }
+
+            _dao.deleteBatch( listDone, plugin );
+
+            if ( listNotifications.size( ) < nBatchSize )
+            {
+                break;
+            }
+        }
+
+        return nSent;
+    }
+
+    /**
+     * Notify a provider of several removed subscriptions
+     * 
+     * @param strProvider
+     *            The name of the provider
+     * @param listNotifications
+     *            The notifications of this provider
+     * @return true if the provider was notified, false if the notifications must be retried
+     */
+    private boolean send( String strProvider, List<SubscriptionRemovalNotification> listNotifications )
+    {
+        ISubscriptionProviderService provider = SubscriptionService.getInstance( ).getProviderService( strProvider );
+        SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+
+        // The plugin of the provider may not be installed or enabled yet
+        if ( provider == null )
+        {
+            metrics.add( SubscriptionMetrics.COUNTER_REMOVAL_NOTIFICATION_FAILED, listNotifications.size( ) );
+            return false;
+        }
+
+        List<Subscription> listSubscriptions = new ArrayList<>( listNotifications.size( ) );
+        for ( SubscriptionRemovalNotification notification : listNotifications )
+        {
+            listSubscriptions.add( notification.getSubscription( ) );
+        }
+
+        long lStart = metrics.startTimer( );
+        try
+        {
+            provider.notifySubscriptionsRemoval( listSubscriptions );
+            metrics.add( SubscriptionMetrics.COUNTER_REMOVAL_NOTIFICATION_SENT, listNotifications.size( ) );
+
+            return true;
+        }
+        catch( Exception e )
+        {
+            AppLogService.error( "Unable to notify provider " + strProvider + " of the removal of " + listSubscriptions.size( ) + " subscription(s) : "
+                    + e.getMessage( ), e );
+            metrics.add( SubscriptionMetrics.COUNTER_REMOVAL_NOTIFICATION_FAILED, listNotifications.size( ) );
+
+            return false;
+        }
+        finally
+        {
+            metrics.stopProviderTimer( strProvider, CALLBACK_NOTIFY_REMOVAL, lStart );
+        }
+    }
+
+    /**
+     * Get the date of the next attempt to send a notification. The delay doubles with each failed attempt.
+     * 
+     * @param nNbAttempts
+     *            The number of attempts already made
+     * @return The date of the next attempt
+     */
+    private static Timestamp getNextAttemptDate( int nNbAttempts )
+    {
+        long lRetryDelay = AppPropertiesService.getPropertyLong( PROPERTY_RETRY_DELAY, DEFAULT_RETRY_DELAY );
+        long lMaxRetryDelay = AppPropertiesService.getPropertyLong( PROPERTY_MAX_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY );
+        long lDelay = lRetryDelay << Math.min( Math.max( nNbAttempts - 1, 0 ), 20 );
+
+        return new Timestamp( System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( Math.min( lDelay, lMaxRetryDelay ) ) );
+    }
+}
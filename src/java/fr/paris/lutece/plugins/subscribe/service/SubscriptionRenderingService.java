@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionDTO;
+import fr.paris.lutece.portal.service.i18n.I18nService;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the DTOs used to display subscriptions. Providers whose {@link ISubscriptionProviderService#supportsBatchDescription()} returns true describe their
+ * subscriptions with a single call, the subscriptions of the other providers are described one by one. Calls are made in parallel by a bounded pool of
+ * threads, and the subscriptions of a provider that does not answer in time are replaced by placeholders, so that a slow provider never stalls the whole
+ * page. When the queue of the pool is full, the subscriptions are replaced by placeholders as well, so that rendering never runs in the request thread.<br />
+ * The timeout can be configured for each provider with the property {@value #PROPERTY_TIMEOUT_PREFIX}&lt;provider name&gt;.
+ */
+public final class SubscriptionRenderingService
+{
+    private static final String PROPERTY_THREADS = "subscribe.rendering.threads";
+    private static final String PROPERTY_QUEUE_SIZE = "subscribe.rendering.queueSize";
+    private static final String PROPERTY_TIMEOUT = "subscribe.rendering.timeout";
+    private static final String PROPERTY_TIMEOUT_PREFIX = "subscribe.rendering.timeout.";
+    private static final int DEFAULT_THREADS = 10;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final long DEFAULT_TIMEOUT = 2000L;
+    private static final String THREAD_NAME_PREFIX = "subscribe-rendering-";
+
+    private static final String MESSAGE_DESCRIPTION_UNAVAILABLE = "subscribe.viewSubscription.descriptionUnavailable";
+
+    private static SubscriptionRenderingService _instance = new SubscriptionRenderingService( );
+
+    private final ThreadPoolExecutor _executor;
+
+    /**
+     * Private constructor
+     */
+    private SubscriptionRenderingService( )
+    {
+        int nThreads = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_THREADS, DEFAULT_THREADS ) );
+        AtomicInteger nThreadCount = new AtomicInteger( );
+
+        // When the queue is full, tasks are rejected and their subscriptions are rendered as placeholders
+        _executor = new ThreadPoolExecutor( nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>( AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE ) ), runnable -> {
+                    Thread thread = new Thread( runnable, THREAD_NAME_PREFIX + nThreadCount.incrementAndGet( ) );
+                    thread.setDaemon( true );
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy( ) );
+    }
+
+    /**
+     * Get the instance of the service
+     * 
+     * @return The instance of the service
+     */
+    public static SubscriptionRenderingService getInstance( )
+    {
+        return _instance;
+    }
+
+    /**
+     * Stop the threads of the service. Subscriptions rendered afterwards are rendered as placeholders.
+     */
+    public void shutdown( )
+    {
+        _executor.shutdownNow( );
+    }
+
+    /**
+     * Build the DTOs of a list of subscriptions. Subscriptions are grouped by provider, and each provider that describes subscriptions in batches describes all
+     * its subscriptions with a single call.
+     * 
+     * @param user
+     *            The user that owns the subscriptions
+     * @param listSubscription
+     *            The subscriptions
+     * @param locale
+     *            The locale to display the subscriptions in
+     * @return The DTOs, in the order of the subscriptions
+     */
+    public List<SubscriptionDTO> getSubscriptionDTOList( LuteceUser user, List<Subscription> listSubscription, Locale locale )
+    {
+        long lStart = System.currentTimeMillis( );
+
+        Map<String, List<Subscription>> mapSubscriptionsByProvider = new LinkedHashMap<>( );
+        for ( Subscription subscription : listSubscription )
+        {
+            mapSubscriptionsByProvider.computeIfAbsent( subscription.getSubscriptionProvider( ), strProvider -> new ArrayList<>( ) ).add( subscription );
+        }
+
+        // Futures of the tasks, with the name of their provider
+        Map<Future<List<SubscriptionDTO>>, String> mapFutures = new LinkedHashMap<>( );
+        for ( Map.Entry<String, List<Subscription>> entry : mapSubscriptionsByProvider.entrySet( ) )
+        {
+            ISubscriptionProviderService providerService = SubscriptionService.getInstance( ).getProviderService( entry.getKey( ) );
+
+            if ( providerService != null )
+            {
+                try
+                {
+                    if ( providerService.supportsBatchDescription( ) )
+                    {
+                        mapFutures.put( _executor.submit( ( ) -> describeSubscriptions( providerService, user, entry.getValue( ), locale ) ), entry.getKey( ) );
+                    }
+                    else
+                    {
+                        for ( Subscription subscription : entry.getValue( ) )
+                        {
+                            mapFutures.put(
+                                    _executor.submit( ( ) -> describeSubscriptions( providerService, user, Collections.singletonList( subscription ), locale ) ),
+                                    entry.getKey( ) );
+                        }
+                    }
+                }
+                catch( RejectedExecutionException e )
+                {
+                    AppLogService.info( "Subscriptions of provider " + entry.getKey( ) + " not described : the rendering queue is full" );
+                }
+            }
+        }
+
+        Map<Integer, SubscriptionDTO> mapSubscriptionDto = new HashMap<>( );
+        for ( Map.Entry<Future<List<SubscriptionDTO>>, String> entry : mapFutures.entrySet( ) )
+        {
+            String strProvider = entry.getValue( );
+            Future<List<SubscriptionDTO>> future = entry.getKey( );
+
+            // Every task started at lStart, so the remaining time is measured from there
+            long lRemainingTime = lStart + getTimeout( strProvider ) - System.currentTimeMillis( );
+
+            try
+            {
+                for ( SubscriptionDTO subscriptionDTO : future.get( Math.max( 0L, lRemainingTime ), TimeUnit.MILLISECONDS ) )
+                {
+                    mapSubscriptionDto.put( subscriptionDTO.getIdSubscription( ), subscriptionDTO );
+                }
+            }
+            catch( TimeoutException e )
+            {
+                future.cancel( true );
+                AppLogService.info( "Subscription provider " + strProvider + " did not describe its subscriptions in time" );
+            }
+            catch( ExecutionException e )
+            {
+                AppLogService.error( "Subscription provider " + strProvider + " was unable to describe its subscriptions", e );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                future.cancel( true );
+            }
+        }
+
+        List<SubscriptionDTO> listSubscriptionDto = new ArrayList<>( listSubscription.size( ) );
+        for ( Subscription subscription : listSubscription )
+        {
+            SubscriptionDTO subscriptionDTO = mapSubscriptionDto.get( subscription.getIdSubscription( ) );
+            listSubscriptionDto.add( ( subscriptionDTO != null ) ? subscriptionDTO : getPlaceholderDTO( subscription, locale ) );
+        }
+
+        return listSubscriptionDto;
+    }
+
+    /**
+     * Describe the subscriptions of a provider
+     * 
+     * @param providerService
+     *            The provider
+     * @param user
+     *            The user that owns the subscriptions
+     * @param listSubscription
+     *            The subscriptions of the provider
+     * @param locale
+     *            The locale
+     * @return The DTOs of the subscriptions
+     */
+    private static List<SubscriptionDTO> describeSubscriptions( ISubscriptionProviderService providerService, LuteceUser user,
+            List<Subscription> listSubscription, Locale locale )
+    {
+        SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+        long lStart = metrics.startTimer( );
+        List<SubscriptionDTO> listSubscriptionDto = providerService.getSubscriptionDTOList( user, listSubscription, locale );
+        metrics.stopProviderTimer( providerService.getProviderName( ), CALLBACK_DESCRIBE, lStart );
+
+        return listSubscriptionDto;
+    }
+
+    /**
+     * Get the DTO displayed when a subscription can not be described
+     * 
+     * @param subscription
+     *            The subscription
+     * @param locale
+     *            The locale
+     * @return The placeholder DTO
+     */
+    private static SubscriptionDTO getPlaceholderDTO( Subscription subscription, Locale locale )
+    {
+        SubscriptionDTO subscriptionDTO = new SubscriptionDTO( );
+        subscriptionDTO.setIdSubscription( subscription.getIdSubscription( ) );
+        subscriptionDTO.setHtmlSubscription( I18nService.getLocalizedString( MESSAGE_DESCRIPTION_UNAVAILABLE, locale ) );
+        subscriptionDTO.setRemovable( false );
+
+        return subscriptionDTO;
+    }
+
+    /**
+     * Get the rendering timeout of a provider
+     * 
+     * @param strProviderName
+     *            The name of the provider
+     * @return The timeout in milliseconds
+     */
+    private static long getTimeout( String strProviderName )
+    {
+        long lDefaultTimeout = AppPropertiesService.getPropertyLong( PROPERTY_TIMEOUT, DEFAULT_TIMEOUT );
+
+        return AppPropertiesService.getPropertyLong( PROPERTY_TIMEOUT_PREFIX + strProviderName, lDefaultTimeout );
+    }
+}
@@ -33,16 +33,25 @@
  */
 package fr.paris.lutece.plugins.subscribe.service;
 
+import fr.paris.lutece.plugins.subscribe.business.CompactSubscriptionList;
 import fr.paris.lutece.plugins.subscribe.business.Subscription;
 import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
+import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.security.LuteceUser;
-import fr.paris.lutece.portal.service.security.LuteceUserService;
 import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.TransactionManager;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -53,6 +62,9 @@ import fr.paris.lutece.plugins.subscribe.business.ISubscriptionDAO;
  */
 public final class SubscriptionService
 {
+    private static final String PROPERTY_FETCH_SIZE = "subscribe.subscriptionStream.fetchSize";
+    private static final int DEFAULT_FETCH_SIZE = 500;
+
     private static SubscriptionService _instance = new SubscriptionService( );
     private ISubscriptionDAO _dao = SpringContextService.getBean( "subscribe.subscriptionDAO" );
 
@@ -102,14 +114,108 @@ public final class SubscriptionService
     }
 
     /**
-     * Create a new subscription. The subscriber id of the subscription must have been filled
+     * Create a new subscription. The subscriber id of the subscription must have been filled. If the user is already subscribed to the resource with the same
+     * key, no subscription is created and the id of the existing subscription is set to the given subscription.
      * 
      * @param subscription
      *            The subscription to create
      */
     public void createSubscription( Subscription subscription )
     {
-        _dao.insert( subscription, SubscribePlugin.getPlugin( ) );
+        subscribeIfAbsent( subscription );
+    }
+
+    /**
+     * Create a new subscription, unless the user is already subscribed to the resource with the same key. The check is atomic at the database level, so
+     * concurrent requests for the same subscription create a single subscription. The subscriber id of the subscription must have been filled.
+     * 
+     * @param subscription
+     *            The subscription to create. If it already exists, its id is set to the id of the existing subscription
+     * @return True if the subscription was created, false if it already existed
+     */
+    public boolean subscribeIfAbsent( Subscription subscription )
+    {
+        if ( !_dao.insertIfAbsent( subscription, SubscribePlugin.getPlugin( ) ) )
+        {
+            return false;
+        }
+
+        SubscriptionReadRouter.getInstance( ).markWritten( subscription );
+        SubscriptionCacheInvalidationService.getInstance( ).invalidate( subscription );
+        SubscriptionIndexService.getInstance( ).add( subscription );
+        SubscriptionBloomFilter.getInstance( ).add( subscription );
+        SubscriptionMetrics.getInstance( ).countInserts( 1 );
+        SubscriptionEventBus.getInstance( ).publish( SubscriptionEvent.created( subscription ) );
+
+        return true;
+    }
+
+    /**
+     * Create several subscriptions at once. The subscriber id of every subscription must have been filled. The batch fails if one of the subscriptions already
+     * exists.
+     * 
+     * @param collectionSubscriptions
+     *            The subscriptions to create
+     */
+    public void createSubscriptions( Collection<Subscription> collectionSubscriptions )
+    {
+        _dao.insertBatch( collectionSubscriptions, SubscribePlugin.getPlugin( ) );
+
+        SubscriptionReadRouter readRouter = SubscriptionReadRouter.getInstance( );
+        SubscriptionCacheInvalidationService cacheInvalidationService = SubscriptionCacheInvalidationService.getInstance( );
+        SubscriptionIndexService indexService = SubscriptionIndexService.getInstance( );
+        SubscriptionBloomFilter bloomFilter = SubscriptionBloomFilter.getInstance( );
+        SubscriptionEventBus eventBus = SubscriptionEventBus.getInstance( );
+        for ( Subscription subscription : collectionSubscriptions )
+        {
+            readRouter.markWritten( subscription );
+            cacheInvalidationService.invalidate( subscription );
+            indexService.add( subscription );
+            bloomFilter.add( subscription );
+            eventBus.publish( SubscriptionEvent.created( subscription ) );
+        }
+        SubscriptionMetrics.getInstance( ).countInserts( collectionSubscriptions.size( ) );
+    }
+
+    /**
+     * Update a subscription
+     * 
+     * @param subscription
+     *            The subscription to update
+     */
+    public void updateSubscription( Subscription subscription )
+    {
+        Plugin plugin = SubscribePlugin.getPlugin( );
+
+        // Read from the database, since the modification must be compared to the stored value
+        Subscription previousSubscription = _dao.load( subscription.getIdSubscription( ), plugin );
+
+        _dao.store( subscription, plugin );
+
+        SubscriptionReadRouter readRouter = SubscriptionReadRouter.getInstance( );
+        SubscriptionCacheInvalidationService cacheInvalidationService = SubscriptionCacheInvalidationService.getInstance( );
+        if ( previousSubscription != null )
+        {
+            readRouter.markWritten( previousSubscription );
+            cacheInvalidationService.invalidate( previousSubscription );
+        }
+        readRouter.markWritten( subscription );
+        cacheInvalidationService.invalidate( subscription );
+        SubscriptionIndexService.getInstance( ).update( subscription );
+        SubscriptionBloomFilter.getInstance( ).add( subscription );
+        SubscriptionEventBus.getInstance( ).publish( SubscriptionEvent.updated( subscription, previousSubscription ) );
+    }
+
+    /**
+     * Load a subscription from the pool of the plugin, without the cache nor the read-only pool
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @return The subscription, or null if no subscription has the given id
+     */
+    Subscription loadSubscription( int nIdSubscription )
+    {
+        return _dao.load( nIdSubscription, SubscribePlugin.getPlugin( ) );
     }
 
     /**
@@ -121,7 +227,27 @@ public final class SubscriptionService
      */
     public Subscription findBySubscriptionId( int nIdSubscription )
     {
-        return _dao.load( nIdSubscription, SubscribePlugin.getPlugin( ) );
+        SubscriptionCacheService cacheService = SubscriptionCacheService.getInstance( );
+        Subscription subscription = cacheService.getSubscription( nIdSubscription );
+
+        if ( subscription == null )
+        {
+            long lGeneration = cacheService.getSubscriptionGeneration( nIdSubscription );
+            SubscriptionReadRouter router = SubscriptionReadRouter.getInstance( );
+            Plugin plugin = router.getPluginForRead( nIdSubscription );
+            SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+            long lStart = metrics.startTimer( );
+            subscription = _dao.load( nIdSubscription, plugin );
+            metrics.stopTimer( SubscriptionMetrics.TIMER_LOAD, lStart );
+
+            // Reads from the read-only pool may be stale, and the cache would keep them after the replica caught up
+            if ( subscription != null && !router.isReadOnly( plugin ) )
+            {
+                cacheService.putSubscription( subscription, lGeneration );
+            }
+        }
+
+        return subscription;
     }
 
     /**
@@ -133,7 +259,149 @@ public final class SubscriptionService
      */
     public List<Subscription> findByFilter( SubscriptionFilter filter )
     {
-        return _dao.findByFilter( filter );
+        SubscriptionCacheService cacheService = SubscriptionCacheService.getInstance( );
+        List<Subscription> listSubscription = cacheService.getSubscriptionList( filter );
+
+        if ( listSubscription == null )
+        {
+            long lGeneration = cacheService.getFilterGeneration( filter );
+            SubscriptionReadRouter router = SubscriptionReadRouter.getInstance( );
+            Plugin plugin = router.getPluginForRead( filter );
+            SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+            long lStart = metrics.startTimer( );
+            listSubscription = _dao.findByFilter( filter, plugin );
+            metrics.stopFindByFilterTimer( filter, lStart );
+
+            if ( !router.isReadOnly( plugin ) )
+            {
+                cacheService.putSubscriptionList( filter, listSubscription, lGeneration );
+            }
+        }
+
+        return listSubscription;
+    }
+
+    /**
+     * Count the subscriptions that match a given filter, without loading them. The limit of the filter is ignored.
+     * 
+     * @param filter
+     *            The filter
+     * @return The number of subscriptions that match the filter
+     */
+    public int countByFilter( SubscriptionFilter filter )
+    {
+        SubscriptionCacheService cacheService = SubscriptionCacheService.getInstance( );
+        Integer nCount = cacheService.getCount( filter );
+
+        if ( nCount == null )
+        {
+            long lGeneration = cacheService.getFilterGeneration( filter );
+            SubscriptionReadRouter router = SubscriptionReadRouter.getInstance( );
+            Plugin plugin = router.getPluginForRead( filter );
+            SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+            long lStart = metrics.startTimer( );
+            nCount = _dao.countByFilter( filter, plugin );
+            metrics.stopTimer( SubscriptionMetrics.TIMER_COUNT, lStart );
+
+            if ( !router.isReadOnly( plugin ) )
+            {
+                cacheService.putCount( filter, nCount, lGeneration );
+            }
+        }
+
+        return nCount;
+    }
+
+    /**
+     * Check if at least one subscription matches a given filter, without loading the subscriptions. The pagination of the filter is ignored.
+     * 
+     * @param filter
+     *            The filter
+     * @return True if at least one subscription matches the filter, false otherwise
+     */
+    public boolean existsByFilter( SubscriptionFilter filter )
+    {
+        // Only the count of the criteria of the filter can answer, not the count of a page
+        SubscriptionFilter criteria = new SubscriptionFilter( filter.getUserId( ), filter.getSubscriptionProvider( ), filter.getSubscriptionKey( ),
+                filter.getIdSubscribedResource( ) );
+        Integer nCount = SubscriptionCacheService.getInstance( ).getCount( criteria );
+
+        if ( nCount != null )
+        {
+            return nCount > 0;
+        }
+
+        SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+        long lStart = metrics.startTimer( );
+        boolean bExists = _dao.existsByFilter( criteria, SubscriptionReadRouter.getInstance( ).getPluginForRead( criteria ) );
+        metrics.stopTimer( SubscriptionMetrics.TIMER_EXISTS, lStart );
+
+        return bExists;
+    }
+
+    /**
+     * Check if a user is subscribed to a resource. If the Bloom filter of subscriptions is enabled, most users that are not subscribed are detected without
+     * querying the database.
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return True if the user is subscribed to the resource, false otherwise
+     */
+    public boolean isSubscribed( String strUserId, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        SubscriptionBloomFilter bloomFilter = SubscriptionBloomFilter.getInstance( );
+        SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+        boolean bFiltered = bloomFilter.isReady( );
+
+        if ( bFiltered && !bloomFilter.mightContain( strUserId, strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource ) )
+        {
+            metrics.increment( SubscriptionMetrics.COUNTER_BLOOM_FILTER_NEGATIVE );
+            return false;
+        }
+
+        boolean bSubscribed = existsByFilter( new SubscriptionFilter( strUserId, strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource ) );
+
+        if ( bFiltered )
+        {
+            metrics.increment( bSubscribed ? SubscriptionMetrics.COUNTER_BLOOM_FILTER_TRUE_POSITIVE : SubscriptionMetrics.COUNTER_BLOOM_FILTER_FALSE_POSITIVE );
+        }
+
+        return bSubscribed;
+    }
+
+    /**
+     * Check if a user is subscribed to a resource
+     * 
+     * @param user
+     *            The user
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return True if the user is subscribed to the resource, false otherwise
+     */
+    public boolean isSubscribed( LuteceUser user, String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        return isSubscribed( user.getName( ), strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource );
+    }
+
+    /**
+     * Get every subscription in a compact list. Providers and subscription keys are interned, so that full table loads take far less memory than a list of
+     * subscriptions. The cache of subscriptions is not used.
+     * 
+     * @return The compact list of every subscription
+     */
+    public CompactSubscriptionList getCompactSubscriptionList( )
+    {
+        return _dao.selectCompactSubscriptionsList( SubscriptionReadRouter.getInstance( ).getPluginForBulkRead( ) );
     }
 
     /**
@@ -152,12 +420,33 @@ public final class SubscriptionService
         }
         else
         {
+            SubscriptionCacheInvalidationService cacheInvalidationService = SubscriptionCacheInvalidationService.getInstance( );
+            boolean bLoadSubscription = cacheInvalidationService.isEnabled( ) || SubscriptionEventBus.getInstance( ).hasListeners( );
+            Subscription subscription = bLoadSubscription ? findBySubscriptionId( nIdSubscription ) : null;
+
             _dao.delete( nIdSubscription, SubscribePlugin.getPlugin( ) );
+            if ( subscription != null )
+            {
+                SubscriptionReadRouter.getInstance( ).markWritten( subscription );
+            }
+            else
+            {
+                // The user and the resource of the removed subscription are unknown
+                SubscriptionReadRouter.getInstance( ).markAllWritten( );
+            }
+            SubscriptionIndexService.getInstance( ).remove( nIdSubscription );
+            SubscriptionMetrics.getInstance( ).countDeletes( 1 );
+            SubscriptionEventBus.getInstance( ).publish( SubscriptionEvent.deleted( nIdSubscription, subscription ) );
+
+            if ( subscription != null )
+            {
+                cacheInvalidationService.invalidate( subscription );
+            }
         }
     }
 
     /**
-     * Remove a subscription
+     * Remove a subscription. The provider of the subscription is notified in background, once the removal is committed.
      * 
      * @param subscription
      *            The subscription to remove
@@ -166,18 +455,163 @@ public final class SubscriptionService
      */
     public void removeSubscription( Subscription subscription, boolean bNotifySubscriptionProvider )
     {
+        Plugin plugin = SubscribePlugin.getPlugin( );
+
+        if ( bNotifySubscriptionProvider )
+        {
+            // The notification is stored with the removal, so that it is neither lost nor sent for a removal that was rolled back
+            TransactionManager.beginTransaction( plugin );
+            try
+            {
+                _dao.delete( subscription.getIdSubscription( ), plugin );
+                SubscriptionRemovalNotificationService.getInstance( ).enqueue( Collections.singletonList( subscription ) );
+                TransactionManager.commitTransaction( plugin );
+            }
+            catch( Exception e )
+            {
+                TransactionManager.rollBack( plugin );
+                throw new AppException( e.getMessage( ), e );
+            }
+        }
+        else
+        {
+            _dao.delete( subscription.getIdSubscription( ), plugin );
+        }
+        SubscriptionReadRouter.getInstance( ).markWritten( subscription );
+        SubscriptionCacheInvalidationService.getInstance( ).invalidate( subscription );
+        SubscriptionIndexService.getInstance( ).remove( subscription.getIdSubscription( ) );
+        SubscriptionMetrics.getInstance( ).countDeletes( 1 );
+        SubscriptionEventBus.getInstance( ).publish( SubscriptionEvent.deleted( subscription.getIdSubscription( ), subscription ) );
+    }
+
+    /**
+     * Remove several subscriptions from their ids. Providers of the subscriptions are not notified.
+     * 
+     * @param arrayIdSubscriptions
+     *            The ids of the subscriptions to remove
+     */
+    public void removeSubscriptions( int [ ] arrayIdSubscriptions )
+    {
+        _dao.deleteBatch( arrayIdSubscriptions, SubscribePlugin.getPlugin( ) );
+        SubscriptionReadRouter.getInstance( ).markAllWritten( );
+        SubscriptionCacheInvalidationService.getInstance( ).resetCache( );
+        SubscriptionIndexService indexService = SubscriptionIndexService.getInstance( );
+        SubscriptionEventBus eventBus = SubscriptionEventBus.getInstance( );
+        for ( int nIdSubscription : arrayIdSubscriptions )
+        {
+            indexService.remove( nIdSubscription );
+            eventBus.publish( SubscriptionEvent.deleted( nIdSubscription, null ) );
+        }
+        SubscriptionMetrics.getInstance( ).countDeletes( arrayIdSubscriptions.length );
+    }
+
+    /**
+     * Remove every subscription that match a given filter. Nothing is removed if the filter has no criteria. Providers of the subscriptions are not notified.
+     * 
+     * @param filter
+     *            The filter
+     * @return The number of removed subscriptions
+     */
+    public int removeSubscriptionsByFilter( SubscriptionFilter filter )
+    {
+        return removeByFilter( filter, false );
+    }
+
+    /**
+     * Remove every subscription to a resource, with a single query
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider
+     * @param strSubscriptionKey
+     *            The subscription key, or null to remove the subscriptions with any key
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @param bNotifySubscriptionProvider
+     *            True to notify the provider of the removed subscriptions, false otherwise. The provider is notified in background, with a single call
+     * @return The number of removed subscriptions
+     */
+    public int removeSubscriptionsByResource( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource,
+            boolean bNotifySubscriptionProvider )
+    {
+        if ( strSubscriptionProvider == null || strIdSubscribedResource == null )
+        {
+            return 0;
+        }
+
+        SubscriptionFilter filter = new SubscriptionFilter( );
+        filter.setSubscriptionProvider( strSubscriptionProvider );
+        filter.setSubscriptionKey( strSubscriptionKey );
+        filter.setIdSubscribedResource( strIdSubscribedResource );
+
+        return removeByFilter( filter, bNotifySubscriptionProvider );
+    }
+
+    /**
+     * Remove every subscription of a user, with a single query
+     * 
+     * @param strUserId
+     *            The id of the user
+     * @param bNotifySubscriptionProvider
+     *            True to notify the providers of the removed subscriptions, false otherwise. Providers are notified in background, with one call per provider
+     * @return The number of removed subscriptions
+     */
+    public int removeSubscriptionsByUser( String strUserId, boolean bNotifySubscriptionProvider )
+    {
+        if ( StringUtils.isEmpty( strUserId ) )
+        {
+            return 0;
+        }
+
+        SubscriptionFilter filter = new SubscriptionFilter( );
+        filter.setIdSubscriber( strUserId );
+
+        return removeByFilter( filter, bNotifySubscriptionProvider );
+    }
+
+    /**
+     * Remove every subscription that match a given filter. Nothing is removed if the filter has no criteria.
+     * 
+     * @param filter
+     *            The filter
+     * @param bNotifySubscriptionProvider
+     *            True to store a removal notification for each removed subscription, in the transaction of the removal
+     * @return The number of removed subscriptions
+     */
+    private int removeByFilter( SubscriptionFilter filter, boolean bNotifySubscriptionProvider )
+    {
+        Plugin plugin = SubscribePlugin.getPlugin( );
+        int nRemoved;
+
         if ( bNotifySubscriptionProvider )
         {
-            List<ISubscriptionProviderService> listProviders = SpringContextService.getBeansOfType( ISubscriptionProviderService.class );
-            for ( ISubscriptionProviderService provider : listProviders )
+            TransactionManager.beginTransaction( plugin );
+            try
+            {
+                SubscriptionRemovalNotificationService.getInstance( ).enqueue( filter );
+                nRemoved = _dao.deleteByFilter( filter, plugin );
+                TransactionManager.commitTransaction( plugin );
+            }
+            catch( Exception e )
             {
-                if ( StringUtils.equals( subscription.getSubscriptionProvider( ), provider.getProviderName( ) ) )
-                {
-                    provider.notifySubscriptionRemoval( subscription );
-                }
+                TransactionManager.rollBack( plugin );
+                throw new AppException( e.getMessage( ), e );
             }
         }
-        _dao.delete( subscription.getIdSubscription( ), SubscribePlugin.getPlugin( ) );
+        else
+        {
+            nRemoved = _dao.deleteByFilter( filter, plugin );
+        }
+
+        if ( nRemoved > 0 )
+        {
+            SubscriptionReadRouter.getInstance( ).markAllWritten( );
+            SubscriptionCacheInvalidationService.getInstance( ).resetCache( );
+            SubscriptionIndexService.getInstance( ).removeMatching( filter );
+            SubscriptionMetrics.getInstance( ).countDeletes( nRemoved );
+            SubscriptionEventBus.getInstance( ).publish( SubscriptionEvent.deletedByFilter( filter ) );
+        }
+
+        return nRemoved;
     }
 
     /**
@@ -189,7 +623,7 @@ public final class SubscriptionService
      */
     public LuteceUser getLuteceUserFromSubscription( Subscription subscription )
     {
-        return LuteceUserService.getLuteceUserFromName( subscription.getUserId( ) );
+        return SubscriberResolver.getInstance( ).resolve( subscription.getUserId( ) );
     }
 
     /**
@@ -204,22 +638,82 @@ public final class SubscriptionService
      * @return The collection of users that subscribed to the given resource with the given key. Returns an empty collection if no users was found
      */
     public Collection<LuteceUser> getSubscriberList( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource )
+    {
+        long lStart = System.nanoTime( );
+        Collection<String> collectionUserIds;
+        SubscriptionIndexService indexService = SubscriptionIndexService.getInstance( );
+        if ( indexService.isReady( ) )
+        {
+            collectionUserIds = indexService.getUserIds( strSubscriptionProvider, strSubscriptionKey, strIdSubscribedResource );
+        }
+        else
+        {
+            SubscriptionFilter filter = new SubscriptionFilter( );
+            filter.setSubscriptionProvider( strSubscriptionProvider );
+            filter.setSubscriptionKey( strSubscriptionKey );
+            filter.setIdSubscribedResource( strIdSubscribedResource );
+
+            collectionUserIds = new LinkedHashSet<>( );
+            for ( Subscription subscription : findByFilter( filter ) )
+            {
+                collectionUserIds.add( subscription.getUserId( ) );
+            }
+        }
+        long lQueryEnd = System.nanoTime( );
+
+        Set<LuteceUser> usersFound = new HashSet<>( SubscriberResolver.getInstance( ).resolve( collectionUserIds ).values( ) );
+
+        if ( AppLogService.isDebugEnabled( ) )
+        {
+            AppLogService.debug( "Subscribers of " + strSubscriptionProvider + "/" + strSubscriptionKey + "/" + strIdSubscribedResource + " : "
+                    + collectionUserIds.size( ) + " distinct users, " + usersFound.size( ) + " users found. Query : "
+                    + TimeUnit.NANOSECONDS.toMillis( lQueryEnd - lStart ) + " ms, user resolution : "
+                    + TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - lQueryEnd ) + " ms" );
+        }
+
+        return usersFound;
+    }
+
+    /**
+     * Visit the subscriptions that match a given filter one by one, without loading them all in memory. The cache of subscriptions is not used.
+     * 
+     * @param filter
+     *            The filter
+     * @param visitor
+     *            The visitor called for each subscription
+     */
+    public void forEachSubscription( SubscriptionFilter filter, Consumer<Subscription> visitor )
+    {
+        _dao.visitByFilter( filter, AppPropertiesService.getPropertyInt( PROPERTY_FETCH_SIZE, DEFAULT_FETCH_SIZE ), visitor,
+                SubscriptionReadRouter.getInstance( ).getPluginForRead( filter ) );
+    }
+
+    /**
+     * Visit the users that subscribed to a given resource with the given key one by one, without loading them all in memory. Subscriptions whose user can not
+     * be found are skipped.
+     * 
+     * @param strSubscriptionProvider
+     *            The subscription provider of subscribers to visit
+     * @param strSubscriptionKey
+     *            The subscription key of subscribers to visit
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @param visitor
+     *            The visitor called for each subscriber
+     */
+    public void forEachSubscriber( String strSubscriptionProvider, String strSubscriptionKey, String strIdSubscribedResource, Consumer<LuteceUser> visitor )
     {
         SubscriptionFilter filter = new SubscriptionFilter( );
         filter.setSubscriptionProvider( strSubscriptionProvider );
         filter.setSubscriptionKey( strSubscriptionKey );
         filter.setIdSubscribedResource( strIdSubscribedResource );
-        List<Subscription> listSubscription = findByFilter( filter );
-        Set<LuteceUser> usersFound = new HashSet<>( );
-        for ( Subscription subscription : listSubscription )
-        {
-            LuteceUser user = LuteceUserService.getLuteceUserFromName( subscription.getUserId( ) );
+        forEachSubscription( filter, subscription -> {
+            LuteceUser user = SubscriberResolver.getInstance( ).resolve( subscription.getUserId( ) );
             if ( user != null )
             {
-                usersFound.add( user );
+                visitor.accept( user );
             }
-        }
-        return usersFound;
+        } );
     }
 
     /**
@@ -231,14 +725,6 @@ public final class SubscriptionService
      */
     public ISubscriptionProviderService getProviderService( String strProvider )
     {
-        List<ISubscriptionProviderService> listProviderServices = SpringContextService.getBeansOfType( ISubscriptionProviderService.class );
-        for ( ISubscriptionProviderService provider : listProviderServices )
-        {
-            if ( StringUtils.equals( strProvider, provider.getProviderName( ) ) )
-            {
-                return provider;
-            }
-        }
-        return null;
+        return SubscriptionProviderRegistry.getInstance( ).getProvider( strProvider );
     }
 }
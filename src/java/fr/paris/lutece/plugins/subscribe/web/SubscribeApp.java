@@ -36,7 +36,7 @@ package fr.paris.lutece.plugins.subscribe.web;
 import fr.paris.lutece.plugins.subscribe.business.Subscription;
 import fr.paris.lutece.plugins.subscribe.business.SubscriptionDTO;
 import fr.paris.lutece.plugins.subscribe.business.SubscriptionFilter;
-import fr.paris.lutece.plugins.subscribe.service.ISubscriptionProviderService;
+import fr.paris.lutece.plugins.subscribe.service.SubscriptionRenderingService;
 import fr.paris.lutece.plugins.subscribe.service.SubscriptionService;
 import fr.paris.lutece.portal.service.message.SiteMessage;
 import fr.paris.lutece.portal.service.message.SiteMessageException;
@@ -60,7 +60,6 @@ import org.apache.commons.lang.StringUtils;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -83,10 +82,14 @@ public class SubscribeApp extends MVCApplication
 
     private static final String ENCODE_FROM_URL_PARAMETER = "encode.fromUrl.parameter";
     private static final String ENABLE_FROM_URL_PARAMETER = "enable.fromUrl.parameter";
+    private static final String PROPERTY_ITEMS_PER_PAGE = "subscribe.subscriptionList.itemsPerPage";
+    private static final int DEFAULT_ITEMS_PER_PAGE = 20;
 
     private static final String PARAMETER_REFERER = "referer";
     private static final String PARAMETER_ID_SUBSCRIPTION = "idSubscription";
     private static final String PARAMETER_FROM_URL = "from_url";
+    private static final String PARAMETER_AFTER = "after";
+    private static final String PARAMETER_BEFORE = "before";
 
     private static final String ACTION_DO_REMOVE_URL = "doRemoveSubscription";
     private static final String ACTION_CONFIRM_REMOVE_URL = "confirmRemoveSubscription";
@@ -97,6 +100,10 @@ public class SubscribeApp extends MVCApplication
 
     private static final String TEMPLATE_MANAGE_SUBSCRIPTION = "skin/plugins/subscribe/view_subscription_list.html";
     private static final String MARK_LIST_SUBSCRIPTION_DTO = "list_subscription_dto";
+    private static final String MARK_HAS_PREVIOUS_PAGE = "has_previous_page";
+    private static final String MARK_HAS_NEXT_PAGE = "has_next_page";
+    private static final String MARK_FIRST_ID_SUBSCRIPTION = "first_id_subscription";
+    private static final String MARK_LAST_ID_SUBSCRIPTION = "last_id_subscription";
 
     /**
      * View the list of subscriptions of a user
@@ -114,7 +121,9 @@ public class SubscribeApp extends MVCApplication
     }
 
     /**
-     * Get the HTML content to display the list of subscriptions of the current user
+     * Get the HTML content to display a page of the list of subscriptions of the current user. The page is selected by the parameters
+     * {@value #PARAMETER_AFTER} or {@value #PARAMETER_BEFORE}, that contain the id of the last subscription of the previous page or of the first subscription
+     * of the next page.
      * 
      * @param request
      *            The user
@@ -128,26 +137,52 @@ public class SubscribeApp extends MVCApplication
             if ( user != null )
             {
                 SubscriptionService subscriptionService = SubscriptionService.getInstance( );
+                int nItemsPerPage = AppPropertiesService.getPropertyInt( PROPERTY_ITEMS_PER_PAGE, DEFAULT_ITEMS_PER_PAGE );
+                int nIdAfter = getIntParameter( request, PARAMETER_AFTER );
+                int nIdBefore = getIntParameter( request, PARAMETER_BEFORE );
+
+                // One more subscription than displayed is read to know if there is another page
                 SubscriptionFilter filter = new SubscriptionFilter( );
                 filter.setIdSubscriber( user.getName( ) );
-                List<Subscription> listSubscription = subscriptionService.findByFilter( filter );
-                List<SubscriptionDTO> listSubscriptionDto = new ArrayList<>( listSubscription.size( ) );
-                for ( Subscription subscription : listSubscription )
+                filter.setLimit( nItemsPerPage + 1 );
+                boolean bHasPreviousPage;
+                boolean bHasNextPage;
+                List<Subscription> listSubscription;
+                if ( nIdBefore > 0 )
+                {
+                    filter.setIdSubscriptionBefore( nIdBefore );
+                    listSubscription = subscriptionService.findByFilter( filter );
+                    bHasPreviousPage = listSubscription.size( ) > nItemsPerPage;
+                    bHasNextPage = true;
+                    if ( bHasPreviousPage )
+                    {
+                        listSubscription = listSubscription.subList( 1, listSubscription.size( ) );
+                    }
+                }
+                else
                 {
-                    ISubscriptionProviderService providerService = subscriptionService.getProviderService( subscription.getSubscriptionProvider( ) );
-                    SubscriptionDTO subscriptionDTO = new SubscriptionDTO( );
-                    subscriptionDTO.setIdSubscription( subscription.getIdSubscription( ) );
-                    subscriptionDTO.setRemovable(
-                            providerService.isSubscriptionRemovable( user, subscription.getSubscriptionKey( ), subscription.getIdSubscribedResource( ) ) );
-                    subscriptionDTO.setUrlModify(
-                            providerService.getUrlModifySubscription( user, subscription.getSubscriptionKey( ), subscription.getIdSubscribedResource( ) ) );
-                    subscriptionDTO.setHtmlSubscription( providerService.getSubscriptionHtmlDescriptionBis( user, subscription.getSubscriptionKey( ),
-                            subscription.getIdSubscribedResource( ), getStaticLocale( request ), subscription.getIdSubscribedResource( ) ) );
-                    listSubscriptionDto.add( subscriptionDTO );
+                    filter.setIdSubscriptionAfter( nIdAfter );
+                    listSubscription = subscriptionService.findByFilter( filter );
+                    bHasPreviousPage = nIdAfter > 0;
+                    bHasNextPage = listSubscription.size( ) > nItemsPerPage;
+                    if ( bHasNextPage )
+                    {
+                        listSubscription = listSubscription.subList( 0, nItemsPerPage );
+                    }
                 }
 
+                List<SubscriptionDTO> listSubscriptionDto = SubscriptionRenderingService.getInstance( ).getSubscriptionDTOList( user, listSubscription,
+                        getStaticLocale( request ) );
+
                 Map<String, Object> model = new HashMap<>( );
                 model.put( MARK_LIST_SUBSCRIPTION_DTO, listSubscriptionDto );
+                model.put( MARK_HAS_PREVIOUS_PAGE, bHasPreviousPage && !listSubscription.isEmpty( ) );
+                model.put( MARK_HAS_NEXT_PAGE, bHasNextPage && !listSubscription.isEmpty( ) );
+                if ( !listSubscription.isEmpty( ) )
+                {
+                    model.put( MARK_FIRST_ID_SUBSCRIPTION, listSubscription.get( 0 ).getIdSubscription( ) );
+                    model.put( MARK_LAST_ID_SUBSCRIPTION, listSubscription.get( listSubscription.size( ) - 1 ).getIdSubscription( ) );
+                }
 
                 HtmlTemplate template = AppTemplateService.getTemplate( TEMPLATE_MANAGE_SUBSCRIPTION, getStaticLocale( request ), model );
 
@@ -239,6 +274,22 @@ public class SubscribeApp extends MVCApplication
         return new XPage( );
     }
 
+    /**
+     * Get a positive integer parameter of a request
+     * 
+     * @param request
+     *            The request
+     * @param strParameter
+     *            The name of the parameter
+     * @return The value of the parameter, or 0 if it is missing or is not a number
+     */
+    private static int getIntParameter( HttpServletRequest request, String strParameter )
+    {
+        String strValue = request.getParameter( strParameter );
+
+        return ( StringUtils.isNotEmpty( strValue ) && StringUtils.isNumeric( strValue ) && strValue.length( ) < 10 ) ? Integer.parseInt( strValue ) : 0;
+    }
+
     /**
      * Default getStaticLocale() implementation. Could be overriden
      * 
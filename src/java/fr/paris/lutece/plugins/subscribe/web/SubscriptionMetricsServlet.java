@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.web;
+
+import fr.paris.lutece.plugins.subscribe.service.SubscriptionMetrics;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.admin.AdminUserService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that displays the subscription metrics as plain text. It answers 404 unless metrics and the servlet are both enabled in subscribe.properties, and
+ * 403 unless the request comes from an authenticated back office user that has the right given by the property {@value #PROPERTY_SERVLET_RIGHT}.
+ */
+public class SubscriptionMetricsServlet extends HttpServlet
+{
+    private static final long serialVersionUID = -3526198472394718261L;
+
+    private static final String PROPERTY_SERVLET_ENABLED = "subscribe.metrics.servlet.enabled";
+    private static final String PROPERTY_SERVLET_RIGHT = "subscribe.metrics.servlet.right";
+    private static final String DEFAULT_SERVLET_RIGHT = "CORE_CACHE_MANAGEMENT";
+    private static final String CONTENT_TYPE = "text/plain";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        SubscriptionMetrics metrics = SubscriptionMetrics.getInstance( );
+
+        if ( !metrics.isEnabled( ) || !AppPropertiesService.getPropertyBoolean( PROPERTY_SERVLET_ENABLED, false ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+
+        AdminUser user = AdminUserService.getAdminUser( request );
+
+        if ( user == null || !user.checkRight( AppPropertiesService.getProperty( PROPERTY_SERVLET_RIGHT, DEFAULT_SERVLET_RIGHT ) ) )
+        {
+            response.sendError( HttpServletResponse.SC_FORBIDDEN );
+            return;
+        }
+
+        response.setContentType( CONTENT_TYPE );
+        response.setCharacterEncoding( StandardCharsets.UTF_8.name( ) );
+        response.getWriter( ).write( metrics.getReport( ) );
+    }
+}
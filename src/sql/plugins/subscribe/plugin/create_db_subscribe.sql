@@ -5,10 +5,114 @@
 
 DROP TABLE IF EXISTS subscribe_subscription;
 CREATE TABLE subscribe_subscription (		
-	id_subscription int default '0' NOT NULL,
+	id_subscription int AUTO_INCREMENT,
 	id_user varchar(255) default '0' NOT NULL,
 	subscription_provider varchar(255) NULL ,
 	subscription_key varchar(255) default '' NOT NULL,
 	id_subscribed_resource varchar(255) default '' NOT NULL,
+	subscription_hash varchar(64) NOT NULL,
 	PRIMARY KEY (id_subscription)
 );
+
+CREATE UNIQUE INDEX index_subscribe_hash ON subscribe_subscription ( subscription_hash );
+CREATE INDEX index_subscribe_user ON subscribe_subscription ( id_user );
+CREATE INDEX index_subscribe_resource ON subscribe_subscription ( subscription_provider, subscription_key, id_subscribed_resource );
+
+--
+-- Structure for table subscribe_id_block
+--
+
+DROP TABLE IF EXISTS subscribe_id_block;
+CREATE TABLE subscribe_id_block (
+	block_name varchar(50) NOT NULL,
+	next_id int default '1' NOT NULL,
+	PRIMARY KEY (block_name)
+);
+
+--
+-- Structure for table subscribe_removal_notification
+--
+
+DROP TABLE IF EXISTS subscribe_removal_notification;
+CREATE TABLE subscribe_removal_notification (
+	id_notification int AUTO_INCREMENT,
+	id_subscription int NOT NULL,
+	id_user varchar(255) default '0' NOT NULL,
+	subscription_provider varchar(255) NULL ,
+	subscription_key varchar(255) default '' NOT NULL,
+	id_subscribed_resource varchar(255) default '' NOT NULL,
+	nb_attempts int default '0' NOT NULL,
+	date_next_attempt timestamp NULL,
+	PRIMARY KEY (id_notification)
+);
+
+CREATE INDEX index_subscribe_removal_next_attempt ON subscribe_removal_notification ( date_next_attempt );
+
+--
+-- Structure for table subscribe_cache_invalidation
+--
+
+DROP TABLE IF EXISTS subscribe_cache_invalidation;
+CREATE TABLE subscribe_cache_invalidation (
+	id_invalidation int AUTO_INCREMENT,
+	node_id varchar(50) NOT NULL,
+	id_subscription int NULL,
+	id_user varchar(255) NULL,
+	subscription_provider varchar(255) NULL,
+	subscription_key varchar(255) NULL,
+	id_subscribed_resource varchar(255) NULL,
+	date_invalidation timestamp NULL,
+	PRIMARY KEY (id_invalidation)
+);
+
+CREATE INDEX index_subscribe_invalidation_date ON subscribe_cache_invalidation ( date_invalidation );
+
+--
+-- Structure for table subscribe_fanout
+--
+
+DROP TABLE IF EXISTS subscribe_fanout;
+CREATE TABLE subscribe_fanout (
+	id_fanout int AUTO_INCREMENT,
+	subscription_provider varchar(255) NOT NULL,
+	subscription_key varchar(255) NOT NULL,
+	id_subscribed_resource varchar(255) NOT NULL,
+	payload mediumtext NULL,
+	date_creation timestamp NULL,
+	PRIMARY KEY (id_fanout)
+);
+
+--
+-- Structure for table subscribe_fanout_chunk
+--
+
+DROP TABLE IF EXISTS subscribe_fanout_chunk;
+CREATE TABLE subscribe_fanout_chunk (
+	id_chunk int AUTO_INCREMENT,
+	id_fanout int NOT NULL,
+	id_subscription_from int NOT NULL,
+	id_subscription_to int NOT NULL,
+	nb_attempts int default '0' NOT NULL,
+	date_lease_end timestamp NULL,
+	PRIMARY KEY (id_chunk)
+);
+
+CREATE INDEX index_subscribe_fanout_chunk_fanout ON subscribe_fanout_chunk ( id_fanout );
+CREATE INDEX index_subscribe_fanout_chunk_lease_end ON subscribe_fanout_chunk ( date_lease_end );
+
+--
+-- Structure for table subscribe_digest_event
+--
+
+DROP TABLE IF EXISTS subscribe_digest_event;
+CREATE TABLE subscribe_digest_event (
+	id_event int AUTO_INCREMENT,
+	subscription_provider varchar(255) NOT NULL,
+	subscription_key varchar(255) NOT NULL,
+	id_subscribed_resource varchar(255) NOT NULL,
+	payload mediumtext NULL,
+	date_event timestamp NULL,
+	PRIMARY KEY (id_event)
+);
+
+CREATE INDEX index_subscribe_digest_event_resource ON subscribe_digest_event ( subscription_provider, subscription_key, id_subscribed_resource );
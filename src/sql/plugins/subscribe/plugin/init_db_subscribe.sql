@@ -0,0 +1 @@
+INSERT INTO subscribe_id_block ( block_name, next_id ) VALUES ( 'subscribe_subscription', 1 );
@@ -0,0 +1,131 @@
+--
+-- This script is written for MySQL : the backfill of subscription_hash uses SHA2, and the removal of duplicate subscriptions
+-- uses the multiple table DELETE syntax. Other databases must adapt these two statements.
+--
+
+--
+-- Subscription ids are generated by the database or reserved by blocks
+--
+ALTER TABLE subscribe_subscription MODIFY id_subscription int AUTO_INCREMENT;
+
+DROP TABLE IF EXISTS subscribe_id_block;
+CREATE TABLE subscribe_id_block (
+	block_name varchar(50) NOT NULL,
+	next_id int default '1' NOT NULL,
+	PRIMARY KEY (block_name)
+);
+
+INSERT INTO subscribe_id_block ( block_name, next_id ) SELECT 'subscribe_subscription', COALESCE( MAX( id_subscription ), 0 ) + 1 FROM subscribe_subscription;
+
+--
+-- Hash of the user, provider, subscription key and subscribed resource, computed as SubscriptionDAO.getSubscriptionHash.
+-- A unique index on the four columns would exceed the maximum key length of InnoDB
+--
+ALTER TABLE subscribe_subscription ADD COLUMN subscription_hash varchar(64) NULL;
+UPDATE subscribe_subscription SET subscription_hash = SHA2( CONCAT(
+	COALESCE( CONCAT( CHAR_LENGTH( LOWER( id_user ) ), ':', LOWER( id_user ) ), '-1:' ),
+	COALESCE( CONCAT( CHAR_LENGTH( LOWER( subscription_provider ) ), ':', LOWER( subscription_provider ) ), '-1:' ),
+	COALESCE( CONCAT( CHAR_LENGTH( LOWER( subscription_key ) ), ':', LOWER( subscription_key ) ), '-1:' ),
+	COALESCE( CONCAT( CHAR_LENGTH( LOWER( id_subscribed_resource ) ), ':', LOWER( id_subscribed_resource ) ), '-1:' ) ), 256 );
+ALTER TABLE subscribe_subscription MODIFY subscription_hash varchar(64) NOT NULL;
+
+--
+-- Duplicate subscriptions are removed, keeping the oldest one, before the unique index is created
+--
+DELETE s1 FROM subscribe_subscription s1 INNER JOIN subscribe_subscription s2
+	ON s1.subscription_hash = s2.subscription_hash AND s1.id_subscription > s2.id_subscription;
+
+--
+-- Index preventing duplicate subscriptions, and indexes matching the "subscriptions of a user" and "subscribers of a resource" filters
+--
+CREATE UNIQUE INDEX index_subscribe_hash ON subscribe_subscription ( subscription_hash );
+CREATE INDEX index_subscribe_user ON subscribe_subscription ( id_user );
+CREATE INDEX index_subscribe_resource ON subscribe_subscription ( subscription_provider, subscription_key, id_subscribed_resource );
+
+--
+-- Pending notifications of subscription removals to providers
+--
+
+DROP TABLE IF EXISTS subscribe_removal_notification;
+CREATE TABLE subscribe_removal_notification (
+	id_notification int AUTO_INCREMENT,
+	id_subscription int NOT NULL,
+	id_user varchar(255) default '0' NOT NULL,
+	subscription_provider varchar(255) NULL ,
+	subscription_key varchar(255) default '' NOT NULL,
+	id_subscribed_resource varchar(255) default '' NOT NULL,
+	nb_attempts int default '0' NOT NULL,
+	date_next_attempt timestamp NULL,
+	PRIMARY KEY (id_notification)
+);
+
+CREATE INDEX index_subscribe_removal_next_attempt ON subscribe_removal_notification ( date_next_attempt );
+
+--
+-- Log of subscription cache invalidations broadcast between nodes
+--
+
+DROP TABLE IF EXISTS subscribe_cache_invalidation;
+CREATE TABLE subscribe_cache_invalidation (
+	id_invalidation int AUTO_INCREMENT,
+	node_id varchar(50) NOT NULL,
+	id_subscription int NULL,
+	id_user varchar(255) NULL,
+	subscription_provider varchar(255) NULL,
+	subscription_key varchar(255) NULL,
+	id_subscribed_resource varchar(255) NULL,
+	date_invalidation timestamp NULL,
+	PRIMARY KEY (id_invalidation)
+);
+
+CREATE INDEX index_subscribe_invalidation_date ON subscribe_cache_invalidation ( date_invalidation );
+
+--
+-- Fan-outs notifying the subscribers of a resource in background
+--
+
+DROP TABLE IF EXISTS subscribe_fanout;
+CREATE TABLE subscribe_fanout (
+	id_fanout int AUTO_INCREMENT,
+	subscription_provider varchar(255) NOT NULL,
+	subscription_key varchar(255) NOT NULL,
+	id_subscribed_resource varchar(255) NOT NULL,
+	payload mediumtext NULL,
+	date_creation timestamp NULL,
+	PRIMARY KEY (id_fanout)
+);
+
+--
+-- Chunks of fan-outs, with the checkpoint of each chunk
+--
+
+DROP TABLE IF EXISTS subscribe_fanout_chunk;
+CREATE TABLE subscribe_fanout_chunk (
+	id_chunk int AUTO_INCREMENT,
+	id_fanout int NOT NULL,
+	id_subscription_from int NOT NULL,
+	id_subscription_to int NOT NULL,
+	nb_attempts int default '0' NOT NULL,
+	date_lease_end timestamp NULL,
+	PRIMARY KEY (id_chunk)
+);
+
+CREATE INDEX index_subscribe_fanout_chunk_fanout ON subscribe_fanout_chunk ( id_fanout );
+CREATE INDEX index_subscribe_fanout_chunk_lease_end ON subscribe_fanout_chunk ( date_lease_end );
+
+--
+-- Updates of subscribed resources waiting in digest windows
+--
+
+DROP TABLE IF EXISTS subscribe_digest_event;
+CREATE TABLE subscribe_digest_event (
+	id_event int AUTO_INCREMENT,
+	subscription_provider varchar(255) NOT NULL,
+	subscription_key varchar(255) NOT NULL,
+	id_subscribed_resource varchar(255) NOT NULL,
+	payload mediumtext NULL,
+	date_event timestamp NULL,
+	PRIMARY KEY (id_event)
+);
+
+CREATE INDEX index_subscribe_digest_event_resource ON subscribe_digest_event ( subscription_provider, subscription_key, id_subscribed_resource );
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.business;
+
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * Tests for the compact read model of subscriptions
+ */
+public class CompactSubscriptionListTest extends LuteceTestCase
+{
+    private static final String PROVIDER = "provider";
+    private static final String KEY = "key";
+
+    /**
+     * Test that subscriptions are converted back to beans unchanged
+     */
+    public void testToSubscription( )
+    {
+        CompactSubscriptionList list = new CompactSubscriptionList( );
+        for ( int i = 0; i < 2000; i++ )
+        {
+            list.add( i + 1, "user" + ( i % 10 ), ( i % 2 == 0 ) ? PROVIDER : null, KEY + ( i % 3 ), "resource" + i );
+        }
+        list.trimToSize( );
+
+        assertEquals( 2000, list.size( ) );
+        Subscription subscription = list.toSubscription( 1001 );
+        assertEquals( 1002, subscription.getIdSubscription( ) );
+        assertEquals( "user1", subscription.getUserId( ) );
+        assertNull( subscription.getSubscriptionProvider( ) );
+        assertEquals( KEY + "2", subscription.getSubscriptionKey( ) );
+        assertEquals( "resource1001", subscription.getIdSubscribedResource( ) );
+        assertEquals( PROVIDER, list.getSubscriptionProvider( 0 ) );
+
+        // Equal user ids are stored once
+        assertSame( list.getUserId( 0 ), list.getUserId( 10 ) );
+        assertEquals( 2000, list.toSubscriptionList( ).size( ) );
+    }
+
+    /**
+     * Test the dictionary codes
+     */
+    public void testDictionary( )
+    {
+        SubscriptionDictionary dictionary = new SubscriptionDictionary( );
+        int nCode = dictionary.getCode( PROVIDER );
+        assertEquals( nCode, dictionary.getCode( new String( PROVIDER ) ) );
+        assertEquals( PROVIDER, dictionary.getValue( nCode ) );
+        assertEquals( 0, dictionary.getCode( null ) );
+        assertNull( dictionary.getValue( 0 ) );
+        assertEquals( 1, dictionary.size( ) );
+    }
+}
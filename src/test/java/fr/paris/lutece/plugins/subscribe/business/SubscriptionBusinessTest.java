@@ -37,6 +37,9 @@ import fr.paris.lutece.portal.service.plugin.Plugin;
 import fr.paris.lutece.portal.service.plugin.PluginService;
 import fr.paris.lutece.test.LuteceTestCase;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Tests for Subscription business classes
  */
@@ -94,4 +97,199 @@ public class SubscriptionBusinessTest extends LuteceTestCase
         subscriptionStored = dao.load( subscription.getIdSubscription( ), plugin );
         assertNull( subscriptionStored );
     }
+
+    /**
+     * Test the batch operations of the DAO
+     */
+    public void testBatch( )
+    {
+        ISubscriptionDAO dao = new SubscriptionDAO( );
+        Plugin plugin = PluginService.getPlugin( "subscribe" );
+        List<Subscription> listSubscriptions = new ArrayList<>( );
+        for ( int i = 0; i < 3; i++ )
+        {
+            Subscription subscription = new Subscription( );
+            subscription.setUserId( "user" + i );
+            subscription.setSubscriptionProvider( SUBSCRIPTIONPROVIDER1 );
+            subscription.setSubscriptionKey( ACTIONKEY1 );
+            subscription.setIdSubscribedResource( IDSUBSCRIBEDRESOURCE1 );
+            listSubscriptions.add( subscription );
+        }
+
+        // Batch insert test
+        dao.insertBatch( listSubscriptions, plugin );
+        for ( Subscription subscription : listSubscriptions )
+        {
+            assertNotNull( dao.load( subscription.getIdSubscription( ), plugin ) );
+        }
+
+        // Batch delete test
+        dao.deleteBatch( new int [ ] {
+                listSubscriptions.get( 0 ).getIdSubscription( )
+        }, plugin );
+        assertNull( dao.load( listSubscriptions.get( 0 ).getIdSubscription( ), plugin ) );
+
+        // Delete by filter test
+        assertEquals( 0, dao.deleteByFilter( new SubscriptionFilter( ), plugin ) );
+        SubscriptionFilter filter = new SubscriptionFilter( null, SUBSCRIPTIONPROVIDER1, ACTIONKEY1, IDSUBSCRIBEDRESOURCE1 );
+        assertEquals( 2, dao.deleteByFilter( filter, plugin ) );
+        assertTrue( dao.findByFilter( filter, plugin ).isEmpty( ) );
+    }
+
+    /**
+     * Test the count and existence queries of the DAO
+     */
+    public void testCountAndExists( )
+    {
+        ISubscriptionDAO dao = new SubscriptionDAO( );
+        Plugin plugin = PluginService.getPlugin( "subscribe" );
+        List<Subscription> listSubscriptions = new ArrayList<>( );
+        for ( int i = 0; i < 2; i++ )
+        {
+            Subscription subscription = new Subscription( );
+            subscription.setUserId( "countedUser" + i );
+            subscription.setSubscriptionProvider( SUBSCRIPTIONPROVIDER1 );
+            subscription.setSubscriptionKey( ACTIONKEY1 );
+            subscription.setIdSubscribedResource( "countedResource" );
+            listSubscriptions.add( subscription );
+        }
+        dao.insertBatch( listSubscriptions, plugin );
+
+        SubscriptionFilter filterResource = new SubscriptionFilter( null, SUBSCRIPTIONPROVIDER1, ACTIONKEY1, "countedResource" );
+        assertEquals( 2, dao.countByFilter( filterResource, plugin ) );
+        assertEquals( 0, dao.countByFilter( new SubscriptionFilter( null, SUBSCRIPTIONPROVIDER1, ACTIONKEY1, "uncountedResource" ), plugin ) );
+        assertTrue( dao.existsByFilter( new SubscriptionFilter( "countedUser1", SUBSCRIPTIONPROVIDER1, ACTIONKEY1, "countedResource" ), plugin ) );
+        assertFalse( dao.existsByFilter( new SubscriptionFilter( "countedUser2", SUBSCRIPTIONPROVIDER1, ACTIONKEY1, "countedResource" ), plugin ) );
+
+        dao.deleteByFilter( filterResource, plugin );
+    }
+
+    /**
+     * Test the chunk boundaries used by fan-outs
+     */
+    public void testIdBoundaries( )
+    {
+        ISubscriptionDAO dao = new SubscriptionDAO( );
+        Plugin plugin = PluginService.getPlugin( "subscribe" );
+        List<Subscription> listSubscriptions = new ArrayList<>( );
+        for ( int i = 0; i < 5; i++ )
+        {
+            Subscription subscription = new Subscription( );
+            subscription.setUserId( "chunkedUser" + i );
+            subscription.setSubscriptionProvider( SUBSCRIPTIONPROVIDER1 );
+            subscription.setSubscriptionKey( ACTIONKEY1 );
+            subscription.setIdSubscribedResource( "chunkedResource" );
+            listSubscriptions.add( subscription );
+        }
+        dao.insertBatch( listSubscriptions, plugin );
+
+        SubscriptionFilter filter = new SubscriptionFilter( null, SUBSCRIPTIONPROVIDER1, ACTIONKEY1, "chunkedResource" );
+        List<Integer> listBoundaries = dao.selectIdBoundaries( filter, 2, plugin );
+        assertEquals( 3, listBoundaries.size( ) );
+        assertEquals( listSubscriptions.get( 1 ).getIdSubscription( ), listBoundaries.get( 0 ).intValue( ) );
+        assertEquals( listSubscriptions.get( 3 ).getIdSubscription( ), listBoundaries.get( 1 ).intValue( ) );
+        assertEquals( listSubscriptions.get( 4 ).getIdSubscription( ), listBoundaries.get( 2 ).intValue( ) );
+        assertTrue( dao.selectIdBoundaries( new SubscriptionFilter( null, SUBSCRIPTIONPROVIDER1, ACTIONKEY1, "unchunkedResource" ), 2, plugin ).isEmpty( ) );
+
+        dao.deleteByFilter( filter, plugin );
+    }
+
+    /**
+     * Test that a subscription is inserted only once
+     */
+    public void testInsertIfAbsent( )
+    {
+        ISubscriptionDAO dao = new SubscriptionDAO( );
+        Plugin plugin = PluginService.getPlugin( "subscribe" );
+        Subscription subscription = new Subscription( );
+        subscription.setUserId( "uniqueUser" );
+        subscription.setSubscriptionProvider( SUBSCRIPTIONPROVIDER1 );
+        subscription.setSubscriptionKey( ACTIONKEY1 );
+        subscription.setIdSubscribedResource( IDSUBSCRIBEDRESOURCE1 );
+        assertTrue( dao.insertIfAbsent( subscription, plugin ) );
+
+        Subscription duplicate = new Subscription( );
+        duplicate.setUserId( "uniqueUser" );
+        duplicate.setSubscriptionProvider( SUBSCRIPTIONPROVIDER1 );
+        duplicate.setSubscriptionKey( ACTIONKEY1 );
+        duplicate.setIdSubscribedResource( IDSUBSCRIBEDRESOURCE1 );
+        assertFalse( dao.insertIfAbsent( duplicate, plugin ) );
+        assertEquals( subscription.getIdSubscription( ), duplicate.getIdSubscription( ) );
+        assertEquals( 1, dao.countByFilter( new SubscriptionFilter( "uniqueUser", null, null, null ), plugin ) );
+
+        dao.delete( subscription.getIdSubscription( ), plugin );
+    }
+
+    /**
+     * Test that a subscription without provider is inserted only once
+     */
+    public void testInsertIfAbsentWithoutProvider( )
+    {
+        ISubscriptionDAO dao = new SubscriptionDAO( );
+        Plugin plugin = PluginService.getPlugin( "subscribe" );
+        Subscription subscription = new Subscription( );
+        subscription.setUserId( "uniqueUserWithoutProvider" );
+        subscription.setSubscriptionKey( ACTIONKEY1 );
+        subscription.setIdSubscribedResource( IDSUBSCRIBEDRESOURCE1 );
+        assertTrue( dao.insertIfAbsent( subscription, plugin ) );
+
+        Subscription duplicate = new Subscription( );
+        duplicate.setUserId( "uniqueUserWithoutProvider" );
+        duplicate.setSubscriptionKey( ACTIONKEY1 );
+        duplicate.setIdSubscribedResource( IDSUBSCRIBEDRESOURCE1 );
+        assertFalse( dao.insertIfAbsent( duplicate, plugin ) );
+        assertEquals( subscription.getIdSubscription( ), duplicate.getIdSubscription( ) );
+
+        dao.delete( subscription.getIdSubscription( ), plugin );
+    }
+
+    /**
+     * Test that the hash of a subscription ignores case and distinguishes a null value from an empty one
+     */
+    public void testSubscriptionHash( )
+    {
+        assertEquals( SubscriptionDAO.getSubscriptionHash( "user", SUBSCRIPTIONPROVIDER1, ACTIONKEY1, IDSUBSCRIBEDRESOURCE1 ),
+                SubscriptionDAO.getSubscriptionHash( "USER", SUBSCRIPTIONPROVIDER1.toLowerCase( ), ACTIONKEY1, IDSUBSCRIBEDRESOURCE1 ) );
+        assertFalse( SubscriptionDAO.getSubscriptionHash( "user", null, ACTIONKEY1, IDSUBSCRIBEDRESOURCE1 )
+                .equals( SubscriptionDAO.getSubscriptionHash( "user", "", ACTIONKEY1, IDSUBSCRIBEDRESOURCE1 ) ) );
+    }
+
+    /**
+     * Test the keyset pagination of findByFilter
+     */
+    public void testPagination( )
+    {
+        ISubscriptionDAO dao = new SubscriptionDAO( );
+        Plugin plugin = PluginService.getPlugin( "subscribe" );
+        List<Subscription> listSubscriptions = new ArrayList<>( );
+        for ( int i = 0; i < 5; i++ )
+        {
+            Subscription subscription = new Subscription( );
+            subscription.setUserId( "paginatedUser" );
+            subscription.setSubscriptionProvider( SUBSCRIPTIONPROVIDER1 );
+            subscription.setSubscriptionKey( ACTIONKEY1 );
+            subscription.setIdSubscribedResource( IDSUBSCRIBEDRESOURCE1 + i );
+            listSubscriptions.add( subscription );
+        }
+        dao.insertBatch( listSubscriptions, plugin );
+
+        SubscriptionFilter filter = new SubscriptionFilter( );
+        filter.setIdSubscriber( "paginatedUser" );
+        filter.setLimit( 2 );
+        List<Subscription> listPage = dao.findByFilter( filter, plugin );
+        assertEquals( 2, listPage.size( ) );
+        assertEquals( listSubscriptions.get( 0 ).getIdSubscription( ), listPage.get( 0 ).getIdSubscription( ) );
+
+        filter.setIdSubscriptionAfter( listPage.get( 1 ).getIdSubscription( ) );
+        listPage = dao.findByFilter( filter, plugin );
+        assertEquals( listSubscriptions.get( 2 ).getIdSubscription( ), listPage.get( 0 ).getIdSubscription( ) );
+
+        filter.setIdSubscriptionAfter( 0 );
+        filter.setIdSubscriptionBefore( listSubscriptions.get( 4 ).getIdSubscription( ) );
+        listPage = dao.findByFilter( filter, plugin );
+        assertEquals( listSubscriptions.get( 2 ).getIdSubscription( ), listPage.get( 0 ).getIdSubscription( ) );
+        assertEquals( listSubscriptions.get( 3 ).getIdSubscription( ), listPage.get( 1 ).getIdSubscription( ) );
+
+        dao.deleteByFilter( new SubscriptionFilter( "paginatedUser", null, null, null ), plugin );
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionCacheInvalidation;
+import fr.paris.lutece.plugins.subscribe.business.SubscriptionCacheInvalidationDAO;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tests the database transport of cache invalidations with two nodes sharing the same database
+ */
+public class DatabaseCacheInvalidationTransportTest extends LuteceTestCase
+{
+    private static final long TIMEOUT = 10000L;
+
+    /**
+     * Test that an invalidation published by a node is received by the other node, and by itself
+     * 
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    public void testBroadcast( ) throws InterruptedException
+    {
+        DatabaseCacheInvalidationTransport transport1 = createTransport( );
+        DatabaseCacheInvalidationTransport transport2 = createTransport( );
+        List<SubscriptionCacheInvalidation> listReceived1 = new CopyOnWriteArrayList<>( );
+        List<SubscriptionCacheInvalidation> listReceived2 = new CopyOnWriteArrayList<>( );
+        transport1.start( listReceived1::add );
+        transport2.start( listReceived2::add );
+
+        try
+        {
+            Subscription subscription = new Subscription( );
+            subscription.setIdSubscription( 1 );
+            subscription.setUserId( "user1" );
+            subscription.setSubscriptionProvider( "SubscriptionProvider1" );
+            subscription.setSubscriptionKey( "ActionKey1" );
+            subscription.setIdSubscribedResource( "IdSubscribedResource1" );
+            transport1.publish( createInvalidation( "node1", subscription ) );
+            transport2.publish( createInvalidation( "node2", null ) );
+
+            waitForInvalidations( listReceived1, 2 );
+            waitForInvalidations( listReceived2, 2 );
+
+            SubscriptionCacheInvalidation invalidation = listReceived2.get( 0 );
+            assertEquals( "node1", invalidation.getNodeId( ) );
+            assertNotNull( invalidation.getSubscription( ) );
+            assertEquals( subscription.getUserId( ), invalidation.getSubscription( ).getUserId( ) );
+            assertEquals( subscription.getIdSubscribedResource( ), invalidation.getSubscription( ).getIdSubscribedResource( ) );
+
+            invalidation = listReceived1.get( 1 );
+            assertEquals( "node2", invalidation.getNodeId( ) );
+            assertNull( invalidation.getSubscription( ) );
+        }
+        finally
+        {
+            transport1.stop( );
+            transport2.stop( );
+        }
+
+        // Each invalidation is received once
+        assertEquals( 2, listReceived1.size( ) );
+        assertEquals( 2, listReceived2.size( ) );
+    }
+
+    /**
+     * Create a transport, as on a separate node
+     * 
+     * @return The transport
+     */
+    private static DatabaseCacheInvalidationTransport createTransport( )
+    {
+        DatabaseCacheInvalidationTransport transport = new DatabaseCacheInvalidationTransport( );
+        transport.setCacheInvalidationDAO( new SubscriptionCacheInvalidationDAO( ) );
+
+        return transport;
+    }
+
+    /**
+     * Create an invalidation
+     * 
+     * @param strNodeId
+     *            The id of the node broadcasting the invalidation
+     * @param subscription
+     *            The subscription, or null to reset the cache
+     * @return The invalidation
+     */
+    private static SubscriptionCacheInvalidation createInvalidation( String strNodeId, Subscription subscription )
+    {
+        SubscriptionCacheInvalidation invalidation = new SubscriptionCacheInvalidation( );
+        invalidation.setNodeId( strNodeId );
+        invalidation.setSubscription( subscription );
+        invalidation.setDateInvalidation( new Timestamp( System.currentTimeMillis( ) ) );
+
+        return invalidation;
+    }
+
+    /**
+     * Wait until a node received a number of invalidations
+     * 
+     * @param listReceived
+     *            The invalidations received by the node
+     * @param nExpected
+     *            The expected number of invalidations
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    private static void waitForInvalidations( List<SubscriptionCacheInvalidation> listReceived, int nExpected ) throws InterruptedException
+    {
+        long lEnd = System.currentTimeMillis( ) + TIMEOUT;
+
+        while ( listReceived.size( ) < nExpected && System.currentTimeMillis( ) < lEnd )
+        {
+            Thread.sleep( 50L );
+        }
+
+        assertEquals( nExpected, listReceived.size( ) );
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2002-2021, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.subscribe.service;
+
+import fr.paris.lutece.plugins.subscribe.business.Subscription;
+import fr.paris.lutece.test.LuteceTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the Bloom filter of subscriptions
+ */
+public class SubscriptionBloomFilterTest extends LuteceTestCase
+{
+    private static final String PROVIDER = "SubscriptionProvider1";
+    private static final String KEY = "ActionKey1";
+
+    /**
+     * Test that the filter answers "maybe" until it is built, then finds every subscription it was built from
+     */
+    public void testBuild( )
+    {
+        List<Subscription> listSubscriptions = new ArrayList<>( );
+        for ( int i = 1; i <= 100; i++ )
+        {
+            listSubscriptions.add( createSubscription( i, "user" + i, "resource" + i ) );
+        }
+
+        SubscriptionBloomFilter filter = new SubscriptionBloomFilter( true, visitor -> listSubscriptions.forEach( visitor ) );
+        assertFalse( filter.isReady( ) );
+        assertTrue( filter.mightContain( "unknownUser", PROVIDER, KEY, "unknownResource" ) );
+
+        filter.build( );
+
+        assertTrue( filter.isReady( ) );
+        for ( Subscription subscription : listSubscriptions )
+        {
+            assertTrue( filter.mightContain( subscription.getUserId( ), PROVIDER, KEY, subscription.getIdSubscribedResource( ) ) );
+        }
+        assertFalse( filter.mightContain( "unknownUser", PROVIDER, KEY, "unknownResource" ) );
+    }
+
+    /**
+     * Test that a subscription added while the filter is rebuilt is kept by the new filter, although the rebuild did not read it
+     */
+    public void testAddWhileBuilding( )
+    {
+        Subscription subscriptionRead = createSubscription( 1, "user1", "resource1" );
+        Subscription subscriptionBeforeRebuild = createSubscription( 2, "user2", "resource2" );
+        Subscription subscriptionDuringRebuild = createSubscription( 3, "user3", "resource3" );
+        SubscriptionBloomFilter [ ] filterHolder = new SubscriptionBloomFilter [ 1];
+        boolean [ ] bRebuilding = new boolean [ 1];
+
+        // The second build simulates a subscription created after its row was passed by the rebuild
+        SubscriptionBloomFilter filter = new SubscriptionBloomFilter( true, visitor -> {
+            visitor.accept( subscriptionRead );
+            if ( bRebuilding [0] )
+            {
+                filterHolder [0].add( subscriptionDuringRebuild );
+            }
+        } );
+        filterHolder [0] = filter;
+
+        filter.build( );
+        filter.add( subscriptionBeforeRebuild );
+        assertTrue( filter.mightContain( "user2", PROVIDER, KEY, "resource2" ) );
+        assertFalse( filter.mightContain( "user3", PROVIDER, KEY, "resource3" ) );
+
+        bRebuilding [0] = true;
+        filter.build( );
+
+        assertTrue( filter.mightContain( "user1", PROVIDER, KEY, "resource1" ) );
+        assertTrue( filter.mightContain( "user3", PROVIDER, KEY, "resource3" ) );
+
+        // Subscriptions added before the rebuild and not read again are dropped, as removed ones
+        assertFalse( filter.mightContain( "user2", PROVIDER, KEY, "resource2" ) );
+    }
+
+    /**
+     * Test that the filter ignores case, as the database does
+     */
+    public void testIgnoreCase( )
+    {
+        Subscription subscription = createSubscription( 1, "user1", "resource1" );
+        SubscriptionBloomFilter filter = new SubscriptionBloomFilter( true, visitor -> visitor.accept( subscription ) );
+
+        filter.build( );
+
+        assertTrue( filter.mightContain( "User1", PROVIDER.toUpperCase( ), KEY, "RESOURCE1" ) );
+    }
+
+    /**
+     * Test that a disabled filter ignores added subscriptions and always answers "maybe"
+     */
+    public void testDisabled( )
+    {
+        SubscriptionBloomFilter filter = new SubscriptionBloomFilter( false, visitor -> {
+        } );
+        filter.add( createSubscription( 1, "user1", "resource1" ) );
+
+        assertFalse( filter.isReady( ) );
+        assertTrue( filter.mightContain( "unknownUser", PROVIDER, KEY, "unknownResource" ) );
+    }
+
+    /**
+     * Create a subscription
+     * 
+     * @param nIdSubscription
+     *            The id of the subscription
+     * @param strUserId
+     *            The id of the user
+     * @param strIdSubscribedResource
+     *            The id of the subscribed resource
+     * @return The subscription
+     */
+    private static Subscription createSubscription( int nIdSubscription, String strUserId, String strIdSubscribedResource )
+    {
+        Subscription subscription = new Subscription( );
+        subscription.setIdSubscription( nIdSubscription );
+        subscription.setUserId( strUserId );
+        subscription.setSubscriptionProvider( PROVIDER );
+        subscription.setSubscriptionKey( KEY );
+        subscription.setIdSubscribedResource( strIdSubscribedResource );
+
+        return subscription;
+    }
+}